@@ -0,0 +1,107 @@
+package com.craftinginterpreters.lox;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Recursive against explicit-stack parsing and printing of deeply nested input. The recursive
+ * side only gets depths it survives. The iterative side also runs at a million, which setup
+ * checks parses and prints back to the right shape.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xss8m", "-Xmx4g"})
+public class DeepNestingBenchmark {
+    private static final int DEEP = 1_000_000;
+
+    @Param({"1000"})
+    int depth;
+
+    @Param({"parens", "unary", "ternary"})
+    String shape;
+
+    private TokenBuffer shallow;
+    private Expr shallowTree;
+    private TokenBuffer deep;
+    private Expr deepTree;
+
+    @Setup
+    public void setup() {
+        shallow = new Scanner(nest(shape, depth)).scanBuffer();
+        shallowTree = new Parser(shallow.cursor(), Diagnostics.NONE).parse();
+        String recursive = new AstPrinter().print(shallowTree);
+        Expr iterative = new Parser(shallow.cursor(), Diagnostics.NONE).parseIterative();
+        if (!recursive.equals(new AstPrinter().printIterative(iterative))) {
+            throw new IllegalStateException("The parsers disagree.");
+        }
+
+        String source = nest(shape, DEEP);
+        deep = new Scanner(source).scanBuffer();
+        deepTree = new Parser(deep.cursor(), Diagnostics.NONE).parseIterative();
+        if (deepTree == null) throw new IllegalStateException("The deep input doesn't parse.");
+        if (!new AstPrinter().printIterative(deepTree).equals(expected(shape, DEEP))) {
+            throw new IllegalStateException("The deep input doesn't print back.");
+        }
+    }
+
+    private static String nest(String shape, int depth) {
+        switch (shape) {
+            case "parens": return "(".repeat(depth) + "1" + ")".repeat(depth);
+            case "unary": return "-".repeat(depth) + "1";
+            case "ternary": return "true ? 1 : ".repeat(depth) + "2";
+            default: throw new IllegalArgumentException("Unknown shape '" + shape + "'.");
+        }
+    }
+
+    private static String expected(String shape, int depth) {
+        switch (shape) {
+            case "parens": return "(group ".repeat(depth) + "1.0" + ")".repeat(depth);
+            case "unary": return "(- ".repeat(depth) + "1.0" + ")".repeat(depth);
+            case "ternary": return "(: (? true 1.0) ".repeat(depth) + "2.0" + ")".repeat(depth);
+            default: throw new IllegalArgumentException("Unknown shape '" + shape + "'.");
+        }
+    }
+
+    @Benchmark
+    public Expr parseRecursive() {
+        return new Parser(shallow.cursor(), Diagnostics.NONE).parse();
+    }
+
+    @Benchmark
+    public Expr parseIterative() {
+        return new Parser(shallow.cursor(), Diagnostics.NONE).parseIterative();
+    }
+
+    @Benchmark
+    public String printRecursive() {
+        return new AstPrinter().print(shallowTree);
+    }
+
+    @Benchmark
+    public String printIterative() {
+        return new AstPrinter().printIterative(shallowTree);
+    }
+
+    @Benchmark
+    public Expr parseIterativeDeep() {
+        return new Parser(deep.cursor(), Diagnostics.NONE).parseIterative();
+    }
+
+    @Benchmark
+    public String printIterativeDeep() {
+        return new AstPrinter().printIterative(deepTree);
+    }
+}
@@ -0,0 +1,127 @@
+package com.craftinginterpreters.lox;
+
+import com.craftinginterpreters.tool.GenerateCorpus;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Expr object graphs against a FlatAst for about ten million nodes: building one, walking it
+ * and turning the flat one back into Exprs. Setup prints what each tree keeps alive.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgs = {"-Xmx8g"})
+public class FlatAstBenchmark {
+    /* Depth 12 mixed comes out at about 25 nodes an expression. */
+    @Param({"400000"})
+    int expressions;
+
+    private TokenBuffer buffer;
+    private Expr expr;
+    private FlatAst flat;
+
+    @Setup
+    public void setup() {
+        buffer = new Scanner(GenerateCorpus.generate(42, expressions, 12, GenerateCorpus.Mix.MIXED)).scanBuffer();
+
+        long before = retained();
+        flat = new Parser(buffer.cursor(), Diagnostics.NONE).parseFlat();
+        flat.trim();
+        long flatBytes = retained() - before;
+        expr = new Parser(buffer.cursor(), Diagnostics.NONE).parseIterative();
+        long exprBytes = retained() - before - flatBytes;
+
+        if (!new AstPrinter().printIterative(flat.toExpr()).equals(new AstPrinter().printIterative(expr))) {
+            throw new IllegalStateException("The flat tree doesn't match.");
+        }
+        System.out.printf("%n%d nodes: Expr %d MB, FlatAst %d MB (%d MB of it arrays)%n",
+                flat.size(), exprBytes >> 20, flatBytes >> 20, flat.footprint() >> 20);
+    }
+
+    private static long retained() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    @Benchmark
+    public Expr parseExpr() {
+        return new Parser(buffer.cursor(), Diagnostics.NONE).parseIterative();
+    }
+
+    @Benchmark
+    public FlatAst parseFlat() {
+        return new Parser(buffer.cursor(), Diagnostics.NONE).parseFlat();
+    }
+
+    @Benchmark
+    public double walkExpr() {
+        Sum sum = new Sum();
+        expr.accept(sum);
+        return sum.total + sum.nodes;
+    }
+
+    /* Children come before parents, so visiting every node is one pass over the arrays. */
+    @Benchmark
+    public double walkFlat() {
+        double total = 0;
+        int nodes = 0;
+        for (int node = 0; node < flat.size(); node++) {
+            if (flat.kind(node) == FlatAst.NUMBER) total += flat.number(node);
+            nodes++;
+        }
+        return total + nodes;
+    }
+
+    @Benchmark
+    public Expr toExpr() {
+        return flat.toExpr();
+    }
+
+    private static class Sum implements Expr.Visitor<Void> {
+        double total = 0;
+        int nodes = 0;
+
+        @Override
+        public Void visitBinaryExpr(Expr.Binary expr) {
+            nodes++;
+            expr.left.accept(this);
+            expr.right.accept(this);
+            return null;
+        }
+
+        @Override
+        public Void visitGroupingExpr(Expr.Grouping expr) {
+            nodes++;
+            expr.expression.accept(this);
+            return null;
+        }
+
+        @Override
+        public Void visitLiteralExpr(Expr.Literal expr) {
+            nodes++;
+            if (expr.value instanceof Double) total += (Double) expr.value;
+            return null;
+        }
+
+        @Override
+        public Void visitUnaryExpr(Expr.Unary expr) {
+            nodes++;
+            expr.right.accept(this);
+            return null;
+        }
+    }
+}
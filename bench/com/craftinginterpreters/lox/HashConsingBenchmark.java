@@ -0,0 +1,69 @@
+package com.craftinginterpreters.lox;
+
+import com.craftinginterpreters.tool.GenerateCorpus;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/* Plain against hash-consed node construction. Setup prints the dedup ratio and what each tree keeps alive. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class HashConsingBenchmark {
+    @Param({"100000"})
+    int expressions;
+
+    @Param({"4", "8"})
+    int depth;
+
+    @Param({"arithmetic", "strings"})
+    String mix;
+
+    private TokenBuffer buffer;
+
+    @Setup
+    public void setup() {
+        buffer = new Scanner(GenerateCorpus.generate(42, expressions, depth, GenerateCorpus.Mix.named(mix))).scanBuffer();
+
+        long before = retained();
+        Expr plain = new Parser(buffer.cursor(), Diagnostics.NONE).parseIterative();
+        long plainBytes = retained() - before;
+        HashConsingFactory factory = new HashConsingFactory();
+        Expr shared = new Parser(buffer.cursor(), Diagnostics.NONE, factory).parseIterative();
+        long sharedBytes = retained() - before - plainBytes;
+
+        if (!new AstPrinter().printIterative(plain).equals(new AstPrinter().printIterative(shared))) {
+            throw new IllegalStateException("The shared tree doesn't match.");
+        }
+        System.out.printf("%n%d nodes, %d unique, dedup ratio %.2f: plain %d MB, hash-consed %d MB%n",
+                factory.total(), factory.unique(), factory.dedupRatio(), plainBytes >> 20, sharedBytes >> 20);
+    }
+
+    private static long retained() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    @Benchmark
+    public Expr plain() {
+        return new Parser(buffer.cursor(), Diagnostics.NONE).parseIterative();
+    }
+
+    @Benchmark
+    public Expr hashConsed() {
+        return new Parser(buffer.cursor(), Diagnostics.NONE, new HashConsingFactory()).parseIterative();
+    }
+}
@@ -0,0 +1,92 @@
+package com.craftinginterpreters.lox;
+
+import com.craftinginterpreters.tool.GenerateCorpus;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/* The Interpreter against a visitor that boxes every intermediate value. Run with -prof gc. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InterpreterBenchmark {
+    /* Numbers, arithmetic, groups and ternaries only, so nothing hits a runtime error. */
+    static final GenerateCorpus.Mix NUMERIC = new GenerateCorpus.Mix(8, 0, 0, 0, 8, 0, 0, 0, 2, 1, 0, 0);
+
+    @Param({"10000"})
+    int expressions;
+
+    @Param({"4", "12"})
+    int depth;
+
+    Expr expression;
+
+    @Setup
+    public void setup() {
+        String source = GenerateCorpus.generate(42, expressions, depth, NUMERIC);
+        expression = new Parser(new Scanner(source).scanBuffer().cursor(), Diagnostics.NONE).parseIterative();
+        Object unboxed = new Interpreter().evaluate(expression);
+        Object boxed = expression.accept(new BoxedInterpreter());
+        if (!unboxed.equals(boxed)) throw new IllegalStateException("The interpreters disagree.");
+    }
+
+    @Benchmark
+    public Object boxed() {
+        return expression.accept(new BoxedInterpreter());
+    }
+
+    @Benchmark
+    public Object unboxed() {
+        return new Interpreter().evaluate(expression);
+    }
+
+    /* The textbook tree-walker, restricted to what the corpus uses. */
+    static class BoxedInterpreter implements Expr.Visitor<Object> {
+        @Override
+        public Object visitBinaryExpr(Expr.Binary expr) {
+            if (expr.operator.type == TokenType.COLON) {
+                Expr.Binary question = (Expr.Binary) expr.left;
+                if (Interpreter.isTruthy(question.left.accept(this))) return question.right.accept(this);
+                return expr.right.accept(this);
+            }
+
+            Object left = expr.left.accept(this);
+            Object right = expr.right.accept(this);
+            switch (expr.operator.type) {
+                case TokenType.COMMA: return right;
+                case TokenType.MINUS: return (double) left - (double) right;
+                case TokenType.PLUS: return (double) left + (double) right;
+                case TokenType.SLASH: return (double) left / (double) right;
+                case TokenType.STAR: return (double) left * (double) right;
+                default: throw new IllegalStateException("Not in the corpus: " + expr.operator.type);
+            }
+        }
+
+        @Override
+        public Object visitGroupingExpr(Expr.Grouping expr) {
+            return expr.expression.accept(this);
+        }
+
+        @Override
+        public Object visitLiteralExpr(Expr.Literal expr) {
+            return expr.value;
+        }
+
+        @Override
+        public Object visitUnaryExpr(Expr.Unary expr) {
+            return -(double) expr.right.accept(this);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.craftinginterpreters.lox;
+
+import com.craftinginterpreters.tool.GenerateCorpus;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/* Tree-walking, the VM and the hidden class JIT on the Interpreter benchmark's corpus. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JitBenchmark {
+    private static final int CHAIN = 12000;
+
+    @Param({"10000"})
+    int expressions;
+
+    @Param({"4", "12"})
+    int depth;
+
+    private Expr expression;
+    private Chunk chunk;
+    private TieredExpr tiered;
+    private final Interpreter interpreter = new Interpreter();
+    private final VM vm = new VM();
+
+    @Setup
+    public void setup() {
+        String source = GenerateCorpus.generate(42, expressions, depth, InterpreterBenchmark.NUMERIC);
+        expression = new Parser(new Scanner(source).scanBuffer().cursor(), Diagnostics.NONE).parseIterative();
+        chunk = Compiler.compile(expression);
+        tiered = new TieredExpr(expression, interpreter, 0);
+        if (!interpreter.evaluate(expression).equals(tiered.evaluate()) || !tiered.isCompiled()) {
+            throw new IllegalStateException("The JIT disagrees with the Interpreter.");
+        }
+
+        /* A long chain gets split into helper methods without calling them thousands deep. */
+        Expr chain = new Parser(new Scanner("1 + ".repeat(CHAIN) + "1").scanBuffer().cursor(), Diagnostics.NONE)
+            .parseIterative();
+        TieredExpr chained = new TieredExpr(chain, new Interpreter(), 0);
+        if (!Double.valueOf(CHAIN + 1).equals(chained.evaluate()) || !chained.isCompiled()) {
+            throw new IllegalStateException("The long chain didn't compile.");
+        }
+    }
+
+    @Benchmark
+    public Object treeWalk() {
+        return interpreter.evaluate(expression);
+    }
+
+    @Benchmark
+    public Object vm() {
+        return vm.run(chunk);
+    }
+
+    @Benchmark
+    public Object jit() {
+        return tiered.evaluate();
+    }
+
+    @Benchmark
+    public JitCompiler.Compiled compile() {
+        return JitCompiler.compile(expression, interpreter);
+    }
+}
@@ -0,0 +1,88 @@
+package com.craftinginterpreters.lox;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/* Keyword recognition on identifier-heavy input: the old substring + HashMap lookup vs Keywords. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KeywordBenchmark {
+    private static final String[] WORDS = {
+        "and", "class", "else", "false", "for", "fun", "if", "nil", "or", "print",
+        "return", "super", "this", "true", "var", "while",
+        "answer", "classy", "elsewhere", "fortune", "iffy", "order", "printer",
+        "supervisor", "thistle", "truest", "variable", "whilst", "x", "y", "count", "total"
+    };
+
+    /* What Scanner.identifier() used to do. */
+    private static final Map<String, TokenType> keywords = new HashMap<>();
+
+    static {
+        for (TokenType type : TokenType.values()) {
+            if (type.compareTo(TokenType.AND) >= 0 && type.compareTo(TokenType.WHILE) <= 0) {
+                keywords.put(type.name().toLowerCase(), type);
+            }
+        }
+    }
+
+    @Param({"100000"})
+    int identifiers;
+
+    private String source;
+    private CharSource chars;
+    private TokenBuffer tokens;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < identifiers; i++) {
+            builder.append(WORDS[random.nextInt(WORDS.length)]).append(i % 16 == 15 ? '\n' : ' ');
+        }
+        source = builder.toString();
+        chars = CharSource.of(source);
+        tokens = new Scanner(source).scanBuffer();
+        if (hashMap() != recognizer()) throw new IllegalStateException("The two disagree.");
+    }
+
+    @Benchmark
+    public int hashMap() {
+        int hits = 0;
+        for (int i = 0; i < tokens.size() - 1; i++) {
+            int start = tokens.start(i);
+            if (keywords.get(source.substring(start, start + tokens.length(i))) != null) hits++;
+        }
+        return hits;
+    }
+
+    @Benchmark
+    public int recognizer() {
+        int hits = 0;
+        for (int i = 0; i < tokens.size() - 1; i++) {
+            if (Keywords.lookup(chars, tokens.start(i), tokens.length(i)) != TokenType.IDENTIFIER) hits++;
+        }
+        return hits;
+    }
+
+    @Benchmark
+    public TokenBuffer scanBuffer() {
+        return new Scanner(source).scanBuffer();
+    }
+}
@@ -0,0 +1,217 @@
+package com.craftinginterpreters.lox;
+
+import com.craftinginterpreters.tool.GenerateCorpus;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * The same printer and the same boxed evaluator over both generated layouts: accept() on Expr,
+ * a switch on SealedExpr.kind(), and SealedExpr.dispatch().
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LayoutBenchmark {
+    @Param({"10000"})
+    int expressions;
+
+    @Param({"4", "12"})
+    int depth;
+
+    private Expr expression;
+    private SealedExpr sealed;
+
+    @Setup
+    public void setup() {
+        String source = GenerateCorpus.generate(42, expressions, depth, InterpreterBenchmark.NUMERIC);
+        expression = new Parser(new Scanner(source).scanBuffer().cursor(), Diagnostics.NONE).parseIterative();
+        sealed = SealedExpr.of(expression);
+
+        String printed = new AstPrinter().print(expression);
+        if (!printed.equals(visitorPrint()) || !printed.equals(switchPrint())) {
+            throw new IllegalStateException("The printers disagree.");
+        }
+        Object value = expression.accept(new InterpreterBenchmark.BoxedInterpreter());
+        if (!value.equals(switchEvaluate()) || !value.equals(dispatchEvaluate())) {
+            throw new IllegalStateException("The evaluators disagree.");
+        }
+    }
+
+    @Benchmark
+    public String visitorPrint() {
+        StringBuilder builder = new StringBuilder();
+        expression.accept(new VisitorPrinter(builder));
+        return builder.toString();
+    }
+
+    @Benchmark
+    public String switchPrint() {
+        StringBuilder builder = new StringBuilder();
+        print(sealed, builder);
+        return builder.toString();
+    }
+
+    @Benchmark
+    public Object visitorEvaluate() {
+        return expression.accept(new InterpreterBenchmark.BoxedInterpreter());
+    }
+
+    @Benchmark
+    public Object switchEvaluate() {
+        return evaluate(sealed);
+    }
+
+    @Benchmark
+    public Object dispatchEvaluate() {
+        return SealedExpr.dispatch(sealed, new DispatchEvaluator());
+    }
+
+    /* AstPrinter's output, into one builder. */
+    static class VisitorPrinter implements Expr.Visitor<Void> {
+        private final StringBuilder builder;
+
+        VisitorPrinter(StringBuilder builder) {
+            this.builder = builder;
+        }
+
+        @Override
+        public Void visitBinaryExpr(Expr.Binary expr) {
+            builder.append("(").append(expr.operator.lexeme).append(" ");
+            expr.left.accept(this);
+            builder.append(" ");
+            expr.right.accept(this);
+            builder.append(")");
+            return null;
+        }
+
+        @Override
+        public Void visitGroupingExpr(Expr.Grouping expr) {
+            builder.append("(group ");
+            expr.expression.accept(this);
+            builder.append(")");
+            return null;
+        }
+
+        @Override
+        public Void visitLiteralExpr(Expr.Literal expr) {
+            builder.append(expr.value == null ? "nil" : expr.value.toString());
+            return null;
+        }
+
+        @Override
+        public Void visitUnaryExpr(Expr.Unary expr) {
+            builder.append("(").append(expr.operator.lexeme).append(" ");
+            expr.right.accept(this);
+            builder.append(")");
+            return null;
+        }
+    }
+
+    static void print(SealedExpr expr, StringBuilder builder) {
+        switch (expr.kind()) {
+            case SealedExpr.BINARY: {
+                SealedExpr.Binary binary = (SealedExpr.Binary) expr;
+                builder.append("(").append(binary.operator().lexeme).append(" ");
+                print(binary.left(), builder);
+                builder.append(" ");
+                print(binary.right(), builder);
+                builder.append(")");
+                return;
+            }
+            case SealedExpr.GROUPING:
+                builder.append("(group ");
+                print(((SealedExpr.Grouping) expr).expression(), builder);
+                builder.append(")");
+                return;
+            case SealedExpr.LITERAL: {
+                Object value = ((SealedExpr.Literal) expr).value();
+                builder.append(value == null ? "nil" : value.toString());
+                return;
+            }
+            default: {
+                SealedExpr.Unary unary = (SealedExpr.Unary) expr;
+                builder.append("(").append(unary.operator().lexeme).append(" ");
+                print(unary.right(), builder);
+                builder.append(")");
+            }
+        }
+    }
+
+    /* BoxedInterpreter as one switch. */
+    static Object evaluate(SealedExpr expr) {
+        switch (expr.kind()) {
+            case SealedExpr.BINARY: {
+                SealedExpr.Binary binary = (SealedExpr.Binary) expr;
+                if (binary.operator().type == TokenType.COLON) {
+                    SealedExpr.Binary question = (SealedExpr.Binary) binary.left();
+                    if (Interpreter.isTruthy(evaluate(question.left()))) return evaluate(question.right());
+                    return evaluate(binary.right());
+                }
+                Object left = evaluate(binary.left());
+                Object right = evaluate(binary.right());
+                return arithmetic(binary.operator(), left, right);
+            }
+            case SealedExpr.GROUPING:
+                return evaluate(((SealedExpr.Grouping) expr).expression());
+            case SealedExpr.LITERAL:
+                return ((SealedExpr.Literal) expr).value();
+            default:
+                return -(double) evaluate(((SealedExpr.Unary) expr).right());
+        }
+    }
+
+    static class DispatchEvaluator implements SealedExpr.Cases<Object> {
+        @Override
+        public Object binary(SealedExpr.Binary expr) {
+            if (expr.operator().type == TokenType.COLON) {
+                SealedExpr.Binary question = (SealedExpr.Binary) expr.left();
+                if (Interpreter.isTruthy(SealedExpr.dispatch(question.left(), this))) {
+                    return SealedExpr.dispatch(question.right(), this);
+                }
+                return SealedExpr.dispatch(expr.right(), this);
+            }
+            Object left = SealedExpr.dispatch(expr.left(), this);
+            Object right = SealedExpr.dispatch(expr.right(), this);
+            return arithmetic(expr.operator(), left, right);
+        }
+
+        @Override
+        public Object grouping(SealedExpr.Grouping expr) {
+            return SealedExpr.dispatch(expr.expression(), this);
+        }
+
+        @Override
+        public Object literal(SealedExpr.Literal expr) {
+            return expr.value();
+        }
+
+        @Override
+        public Object unary(SealedExpr.Unary expr) {
+            return -(double) SealedExpr.dispatch(expr.right(), this);
+        }
+    }
+
+    private static Object arithmetic(Token operator, Object left, Object right) {
+        switch (operator.type) {
+            case TokenType.COMMA: return right;
+            case TokenType.MINUS: return (double) left - (double) right;
+            case TokenType.PLUS: return (double) left + (double) right;
+            case TokenType.SLASH: return (double) left / (double) right;
+            case TokenType.STAR: return (double) left * (double) right;
+            default: throw new IllegalStateException("Not in the corpus: " + operator.type);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.craftinginterpreters.lox;
+
+import com.craftinginterpreters.tool.GenerateCorpus;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/* Tree-walking against self-specializing nodes. The nodes are built once and stay specialized. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NodeBenchmark {
+    @Param({"10000"})
+    int expressions;
+
+    @Param({"4", "12"})
+    int depth;
+
+    private Expr expression;
+    private Node.Root root;
+    private final Interpreter interpreter = new Interpreter();
+
+    @Setup
+    public void setup() {
+        String source = GenerateCorpus.generate(42, expressions, depth, InterpreterBenchmark.NUMERIC);
+        expression = new Parser(new Scanner(source).scanBuffer().cursor(), Diagnostics.NONE).parseIterative();
+        root = Node.build(expression);
+        if (!interpreter.evaluate(expression).equals(root.execute())) {
+            throw new IllegalStateException("The nodes disagree with the Interpreter.");
+        }
+        checkDeep();
+        checkDeoptimize();
+    }
+
+    /* Trees far deeper than a Java stack run the rest on the Interpreter's stack on the heap. */
+    private void checkDeep() {
+        for (String source : new String[] {"1 + ".repeat(20000) + "1", "-".repeat(200000) + "1"}) {
+            Expr deep = new Parser(new Scanner(source).scanBuffer().cursor(), Diagnostics.NONE).parseIterative();
+            if (!interpreter.evaluate(deep).equals(Node.build(deep).execute())) {
+                throw new IllegalStateException("The deep nodes disagree with the Interpreter.");
+            }
+        }
+    }
+
+    /*
+     * No Lox expression changes type between runs, so a guard never fails on the corpus. Operands
+     * that do make sure the nodes still rewrite themselves to the generic form and count it.
+     */
+    private static void checkDeoptimize() {
+        Node.Root sum = new Node.Root();
+        Flip left = new Flip();
+        sum.wrap(new Node.UninitializedBinary(sum, new Token(TokenType.PLUS, "+", null, 1), left, new Flip()));
+        if (!sum.execute().equals(2.0) || !(left.parent instanceof Node.NumberArithmetic)
+                || !sum.execute().equals("aa") || !(left.parent instanceof Node.GenericBinary)
+                || !sum.execute().equals("aa") || sum.hits(Node.GENERIC) != 1
+                || sum.specializations() != 1 || sum.deoptimizations() != 1) {
+            throw new IllegalStateException("The sum didn't deoptimize.");
+        }
+
+        Node.Root negation = new Node.Root();
+        Flip right = new Flip();
+        negation.wrap(new Node.UninitializedNegate(negation, new Token(TokenType.MINUS, "-", null, 1), right));
+        if (!negation.execute().equals(-1.0) || !(right.parent instanceof Node.NumberNegate)) {
+            throw new IllegalStateException("The negation didn't specialize.");
+        }
+        try {
+            negation.execute();
+            throw new IllegalStateException("Negating a string didn't fail.");
+        } catch (RuntimeError error) {
+            /* Expected, but only after the rewrite. */
+        }
+        if (!(right.parent instanceof Node.GenericNegate)
+                || negation.specializations() != 1 || negation.deoptimizations() != 1) {
+            throw new IllegalStateException("The negation didn't deoptimize.");
+        }
+    }
+
+    /* A number the first time it runs, a string after that. */
+    private static final class Flip extends Node {
+        private boolean ran = false;
+
+        @Override
+        Object execute() {
+            if (ran) return "a";
+            ran = true;
+            return 1.0;
+        }
+    }
+
+    @TearDown
+    public void report() {
+        System.out.printf("%n%d specializations, %d deoptimizations, %.1f%% specialized%n",
+                root.specializations(), root.deoptimizations(), root.hitRate() * 100);
+    }
+
+    @Benchmark
+    public Object treeWalk() {
+        return interpreter.evaluate(expression);
+    }
+
+    @Benchmark
+    public Object nodes() {
+        return root.execute();
+    }
+}
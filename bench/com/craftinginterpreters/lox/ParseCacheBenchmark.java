@@ -0,0 +1,66 @@
+package com.craftinginterpreters.lox;
+
+import com.craftinginterpreters.tool.GenerateCorpus;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/* Scanning and parsing a REPL-sized line every time against one cache shared by four threads. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class ParseCacheBenchmark {
+    private final String[] sources = new String[256];
+    private final ParseCache cache = new ParseCache(1024, 16 << 20);
+
+    @Setup
+    public void setup() {
+        for (int i = 0; i < sources.length; i++) {
+            sources[i] = GenerateCorpus.generate(i, 1, 4, GenerateCorpus.Mix.MIXED);
+        }
+    }
+
+    @TearDown
+    public void report() {
+        System.out.println();
+        System.out.println(cache);
+    }
+
+    @Benchmark
+    public Expr parse() {
+        return parse(next());
+    }
+
+    @Benchmark
+    public Expr cached() {
+        String source = next();
+        Expr expr = cache.get(source);
+        if (expr != null) return expr;
+        expr = parse(source);
+        cache.put(source, expr);
+        return expr;
+    }
+
+    private String next() {
+        return sources[ThreadLocalRandom.current().nextInt(sources.length)];
+    }
+
+    private static Expr parse(String source) {
+        return new Parser(new Scanner(source).scanBuffer().cursor(), Diagnostics.NONE).parseIterative();
+    }
+}
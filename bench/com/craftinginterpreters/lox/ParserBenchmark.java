@@ -0,0 +1,54 @@
+package com.craftinginterpreters.lox;
+
+import com.craftinginterpreters.tool.GenerateCorpus;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/* Recursive descent against the Pratt table over the same TokenBuffer. Run with -prof gc for allocations. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParserBenchmark {
+    @Param({"10000"})
+    int expressions;
+
+    @Param({"4", "12"})
+    int depth;
+
+    @Param({"arithmetic", "mixed"})
+    String mix;
+
+    private TokenBuffer buffer;
+
+    @Setup
+    public void setup() {
+        String source = GenerateCorpus.generate(42, expressions, depth, GenerateCorpus.Mix.named(mix));
+        buffer = new Scanner(source).scanBuffer();
+        String descent = new AstPrinter().print(new Parser(buffer.cursor(), Diagnostics.NONE).parse());
+        String pratt = new AstPrinter().print(new Parser(buffer.cursor(), Diagnostics.NONE).parsePratt());
+        if (!descent.equals(pratt)) throw new IllegalStateException("The parsers disagree.");
+    }
+
+    @Benchmark
+    public Expr recursiveDescent() {
+        return new Parser(buffer.cursor(), Diagnostics.NONE).parse();
+    }
+
+    @Benchmark
+    public Expr pratt() {
+        return new Parser(buffer.cursor(), Diagnostics.NONE).parsePratt();
+    }
+}
@@ -0,0 +1,78 @@
+package com.craftinginterpreters.lox;
+
+import com.craftinginterpreters.tool.GenerateCorpus;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/* Scan, parse and print one generated corpus. SampleTime gives the p99 next to throughput. */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PipelineBenchmark {
+    @Param({"1000", "10000"})
+    int expressions;
+
+    @Param({"4", "12"})
+    int depth;
+
+    @Param({"arithmetic", "mixed"})
+    String mix;
+
+    private String source;
+    private List<Token> tokens;
+    private TokenBuffer buffer;
+    private Expr expression;
+
+    @Setup
+    public void setup() {
+        source = GenerateCorpus.generate(42, expressions, depth, GenerateCorpus.Mix.named(mix));
+        tokens = new Scanner(source).scanTokens();
+        buffer = new Scanner(source).scanBuffer();
+        expression = new Parser(tokens).parse();
+        if (expression == null) throw new IllegalStateException("The corpus doesn't parse.");
+    }
+
+    @Benchmark
+    public List<Token> scanTokens() {
+        return new Scanner(source).scanTokens();
+    }
+
+    @Benchmark
+    public TokenBuffer scanBuffer() {
+        return new Scanner(source).scanBuffer();
+    }
+
+    @Benchmark
+    public Expr parseTokens() {
+        return new Parser(tokens).parse();
+    }
+
+    @Benchmark
+    public Expr parseBuffer() {
+        return new Parser(buffer.cursor(), Diagnostics.NONE).parse();
+    }
+
+    @Benchmark
+    public String astPrinter() {
+        return new AstPrinter().print(expression);
+    }
+
+    @Benchmark
+    public String prefixPrinter() {
+        return new PrefixPrinter().print(expression);
+    }
+}
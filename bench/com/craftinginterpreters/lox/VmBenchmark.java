@@ -0,0 +1,60 @@
+package com.craftinginterpreters.lox;
+
+import com.craftinginterpreters.tool.GenerateCorpus;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/* Tree-walking against the bytecode VM on the Interpreter benchmark's corpus. The chunk is compiled once. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VmBenchmark {
+    @Param({"10000"})
+    int expressions;
+
+    @Param({"4", "12"})
+    int depth;
+
+    private Expr expression;
+    private Chunk chunk;
+    private final Interpreter interpreter = new Interpreter();
+    private final VM vm = new VM();
+
+    @Setup
+    public void setup() {
+        String source = GenerateCorpus.generate(42, expressions, depth, InterpreterBenchmark.NUMERIC);
+        expression = new Parser(new Scanner(source).scanBuffer().cursor(), Diagnostics.NONE).parseIterative();
+        chunk = Compiler.compile(expression);
+        if (!interpreter.evaluate(expression).equals(vm.run(chunk))) {
+            throw new IllegalStateException("The VM disagrees with the Interpreter.");
+        }
+    }
+
+    @Benchmark
+    public Object treeWalk() {
+        return interpreter.evaluate(expression);
+    }
+
+    @Benchmark
+    public Object vm() {
+        return vm.run(chunk);
+    }
+
+    @Benchmark
+    public Chunk compile() {
+        return Compiler.compile(expression);
+    }
+}
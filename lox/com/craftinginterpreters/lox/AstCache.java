@@ -0,0 +1,415 @@
+package com.craftinginterpreters.lox;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+/*
+ * Parsed trees on disk, one file per source, named by the SHA-256 of the source bytes. So a
+ * source that changes simply gets a new entry. An entry that doesn't check out (wrong format
+ * version, wrong digest, bad CRC, or nodes that don't add up to one tree) is deleted, and the
+ * caller parses again and stores a fresh one.
+ *
+ * Entry: "LOXA", format version, the digest, payload length, CRC32 of the payload, then the
+ * payload. The payload is a table of the operator lexemes and string literals, then the nodes
+ * in post-order, so reading them back is one loop over a stack. An operator is one byte, its
+ * type and arity. Its line and lexeme are only written when they differ from the last ones,
+ * as a LINE delta or a LEXEME index in front of it. Whole numbers are zigzag varints.
+ */
+final class AstCache {
+    private static final int MAGIC = 0x4C4F5841;
+    private static final int VERSION = 2;
+    private static final int DIGEST_SIZE = 32;
+    private static final int HEADER_SIZE = 4 + 4 + DIGEST_SIZE + 4 + 4;
+
+    /* Or'ed with the operator's TokenType ordinal. */
+    private static final int UNARY = 0x40;
+    private static final int BINARY = 0x80;
+    private static final byte GROUPING = 2;
+    /* A double that is a whole number fitting a long, not -0. */
+    private static final byte WHOLE = 3;
+    private static final byte NUMBER = 4;
+    private static final byte STRING = 5;
+    private static final byte TRUE = 6;
+    private static final byte FALSE = 7;
+    private static final byte NIL = 8;
+    /* Prefixes for the next operator: its line as a delta, and its lexeme's index. */
+    private static final byte LINE = 9;
+    private static final byte LEXEME = 10;
+
+    private static final TokenType[] TYPES = TokenType.values();
+
+    private final Path directory;
+    /* Counted across threads. Entries themselves only ever appear whole, by rename. */
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+    private final AtomicInteger rejected = new AtomicInteger();
+
+    AstCache(Path directory) {
+        this.directory = directory;
+    }
+
+    /* $XDG_CACHE_HOME/jlox, or ~/.cache/jlox. Per user, unlike the temporary directory. */
+    static Path defaultDirectory() {
+        String home = System.getenv("XDG_CACHE_HOME");
+        if (home == null || home.isEmpty()) return Paths.get(System.getProperty("user.home"), ".cache", "jlox");
+        return Paths.get(home, "jlox");
+    }
+
+    /*
+     * The cache in directory, which is made if it's missing. Entries that check out are trusted,
+     * so a directory someone else owns or can write to is refused rather than read.
+     */
+    static AstCache open(Path directory) throws IOException {
+        boolean posix = directory.getFileSystem().supportedFileAttributeViews().contains("posix");
+        if (Files.notExists(directory, LinkOption.NOFOLLOW_LINKS)) {
+            Path parent = directory.toAbsolutePath().getParent();
+            if (parent != null) Files.createDirectories(parent);
+            try {
+                if (posix) {
+                    Files.createDirectory(directory,
+                            PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+                } else {
+                    Files.createDirectory(directory);
+                }
+            } catch (FileAlreadyExistsException error) {
+                /* Someone got there first. Whoever it was, the checks below decide. */
+            }
+        }
+
+        if (!Files.isDirectory(directory, LinkOption.NOFOLLOW_LINKS)) {
+            throw new IOException(directory + " is not a directory.");
+        }
+        UserPrincipal user = directory.getFileSystem().getUserPrincipalLookupService()
+            .lookupPrincipalByName(System.getProperty("user.name"));
+        if (!Files.getOwner(directory, LinkOption.NOFOLLOW_LINKS).equals(user)) {
+            throw new IOException(directory + " belongs to another user.");
+        }
+        if (posix) {
+            Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(directory, LinkOption.NOFOLLOW_LINKS);
+            if (permissions.contains(PosixFilePermission.GROUP_WRITE)
+                    || permissions.contains(PosixFilePermission.OTHERS_WRITE)) {
+                throw new IOException(directory + " can be written by other users.");
+            }
+        }
+        return new AstCache(directory);
+    }
+
+    static byte[] key(byte[] source) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(source);
+        } catch (NoSuchAlgorithmException error) {
+            throw new IllegalStateException("Every JDK has SHA-256.", error);
+        }
+    }
+
+    /* The tree stored under key, or null when there's none or it doesn't check out. */
+    Expr load(byte[] key) {
+        Path entry = entry(key);
+        if (!Files.isRegularFile(entry)) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        Expr expr;
+        try (FileChannel channel = FileChannel.open(entry, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            expr = read(buffer, key);
+        } catch (IOException | RuntimeException error) {
+            expr = null;
+        }
+
+        if (expr == null) {
+            rejected.incrementAndGet();
+            misses.incrementAndGet();
+            try {
+                Files.deleteIfExists(entry);
+            } catch (IOException error) {
+                /* store() replaces it anyway. */
+            }
+            return null;
+        }
+        hits.incrementAndGet();
+        return expr;
+    }
+
+    /* Writes a temporary file and moves it into place, so readers never see half an entry. */
+    boolean store(byte[] key, Expr expr) {
+        try {
+            Files.createDirectories(directory);
+            Path temporary = Files.createTempFile(directory, "entry", ".tmp");
+            try {
+                Files.write(temporary, write(key, expr));
+                Files.move(temporary, entry(key), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+            return true;
+        } catch (IOException error) {
+            return false;
+        }
+    }
+
+    int hits() {
+        return hits.get();
+    }
+
+    int misses() {
+        return misses.get();
+    }
+
+    /* Entries that were there but stale or corrupt. */
+    int rejected() {
+        return rejected.get();
+    }
+
+    private Path entry(byte[] key) {
+        return directory.resolve(HexFormat.of().formatHex(key) + ".ast");
+    }
+
+    static byte[] write(byte[] key, Expr root) {
+        Output nodes = new Output();
+        Map<String, Integer> indexes = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+        int[] line = {0};
+        String[] lexemes = new String[TYPES.length];
+
+        ExprWalker.walk(root, new ExprWalker.Listener() {
+            @Override
+            public void enter(Expr expr) {}
+
+            @Override
+            public void exit(Expr expr) {
+                if (expr instanceof Expr.Binary binary) {
+                    operator(BINARY, binary.operator);
+                } else if (expr instanceof Expr.Unary unary) {
+                    operator(UNARY, unary.operator);
+                } else if (expr instanceof Expr.Grouping) {
+                    nodes.write(GROUPING);
+                } else {
+                    literal(((Expr.Literal) expr).value);
+                }
+            }
+
+            private void operator(int arity, Token operator) {
+                int type = operator.type.ordinal();
+                if (operator.line != line[0]) {
+                    nodes.write(LINE);
+                    nodes.varint(zigzag(operator.line - line[0]));
+                    line[0] = operator.line;
+                }
+                if (!operator.lexeme.equals(lexemes[type])) {
+                    nodes.write(LEXEME);
+                    nodes.varint(string(operator.lexeme));
+                    lexemes[type] = operator.lexeme;
+                }
+                nodes.write((byte) (arity | type));
+            }
+
+            private void literal(Object value) {
+                if (value == null) {
+                    nodes.write(NIL);
+                } else if (value instanceof Boolean bool) {
+                    nodes.write(bool ? TRUE : FALSE);
+                } else if (value instanceof String string) {
+                    nodes.write(STRING);
+                    nodes.varint(string(string));
+                } else {
+                    double number = (Double) value;
+                    long whole = (long) number;
+                    if (Double.doubleToRawLongBits(whole) == Double.doubleToRawLongBits(number)) {
+                        nodes.write(WHOLE);
+                        nodes.varlong(whole << 1 ^ whole >> 63);
+                    } else {
+                        nodes.write(NUMBER);
+                        nodes.fixed(Double.doubleToRawLongBits(number));
+                    }
+                }
+            }
+
+            private int string(String value) {
+                return indexes.computeIfAbsent(value, added -> {
+                    strings.add(added);
+                    return strings.size() - 1;
+                });
+            }
+        });
+
+        Output payload = new Output();
+        payload.varint(strings.size());
+        for (String string : strings) {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            payload.varint(bytes.length);
+            payload.write(bytes, bytes.length);
+        }
+        payload.write(nodes.bytes, nodes.count);
+
+        CRC32 crc = new CRC32();
+        crc.update(payload.bytes, 0, payload.count);
+        ByteBuffer entry = ByteBuffer.allocate(HEADER_SIZE + payload.count);
+        entry.putInt(MAGIC).putInt(VERSION).put(key).putInt(payload.count).putInt((int) crc.getValue());
+        entry.put(payload.bytes, 0, payload.count);
+        return entry.array();
+    }
+
+    /* The tree in an entry, or null when the header doesn't match. Bad payloads throw. */
+    static Expr read(ByteBuffer buffer, byte[] key) {
+        if (buffer.remaining() < HEADER_SIZE) return null;
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) return null;
+        byte[] digest = new byte[DIGEST_SIZE];
+        buffer.get(digest);
+        if (!Arrays.equals(digest, key)) return null;
+        int length = buffer.getInt();
+        int expected = buffer.getInt();
+        if (length != buffer.remaining()) return null;
+
+        ByteBuffer payload = buffer.slice();
+        CRC32 crc = new CRC32();
+        crc.update(payload.duplicate());
+        if ((int) crc.getValue() != expected) return null;
+
+        String[] strings = new String[varint(payload)];
+        for (int i = 0; i < strings.length; i++) {
+            byte[] bytes = new byte[varint(payload)];
+            payload.get(bytes);
+            strings[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        Expr[] stack = new Expr[64];
+        int top = 0;
+        int line = 0;
+        String[] lexemes = new String[TYPES.length];
+        String lexeme = null;
+        while (payload.hasRemaining()) {
+            int tag = payload.get() & 0xFF;
+            if (tag >= UNARY) {
+                TokenType type = TYPES[tag & (UNARY - 1)];
+                if (lexeme != null) lexemes[type.ordinal()] = lexeme;
+                lexeme = null;
+                Token operator = new Token(type, lexemes[type.ordinal()], null, line);
+                Expr expr;
+                if (tag >= BINARY) {
+                    Expr right = stack[--top];
+                    expr = new Expr.Binary(stack[--top], operator, right);
+                } else {
+                    expr = new Expr.Unary(operator, stack[--top]);
+                }
+                stack[top++] = expr;
+                continue;
+            }
+
+            Expr expr;
+            switch (tag) {
+                case LINE: {
+                    int delta = varint(payload);
+                    line += delta >>> 1 ^ -(delta & 1);
+                    continue;
+                }
+                case LEXEME:
+                    lexeme = strings[varint(payload)];
+                    continue;
+                case GROUPING: expr = new Expr.Grouping(stack[--top]); break;
+                case WHOLE: {
+                    long zigzag = varlong(payload);
+                    expr = new Expr.Literal((double) (zigzag >>> 1 ^ -(zigzag & 1)));
+                    break;
+                }
+                case NUMBER: expr = new Expr.Literal(Double.longBitsToDouble(payload.getLong())); break;
+                case STRING: expr = new Expr.Literal(strings[varint(payload)]); break;
+                case TRUE: expr = new Expr.Literal(true); break;
+                case FALSE: expr = new Expr.Literal(false); break;
+                case NIL: expr = new Expr.Literal(null); break;
+                default: throw new IllegalArgumentException("Unknown node tag " + tag + ".");
+            }
+            if (top == stack.length) stack = Arrays.copyOf(stack, top * 2);
+            stack[top++] = expr;
+        }
+        if (top != 1) throw new IllegalArgumentException(top + " trees left over instead of one.");
+        return stack[0];
+    }
+
+    private static int zigzag(int value) {
+        return value << 1 ^ value >> 31;
+    }
+
+    private static int varint(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte next = buffer.get();
+            value |= (next & 0x7F) << shift;
+            if (next >= 0) return value;
+        }
+        throw new IllegalArgumentException("Varint is too long.");
+    }
+
+    private static long varlong(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            byte next = buffer.get();
+            value |= (long) (next & 0x7F) << shift;
+            if (next >= 0) return value;
+        }
+        throw new IllegalArgumentException("Varint is too long.");
+    }
+
+    /* A growing byte array. ByteArrayOutputStream would synchronize every write. */
+    private static final class Output {
+        byte[] bytes = new byte[256];
+        int count = 0;
+
+        void write(byte value) {
+            if (count == bytes.length) bytes = Arrays.copyOf(bytes, count * 2);
+            bytes[count++] = value;
+        }
+
+        void write(byte[] values, int length) {
+            if (count + length > bytes.length) bytes = Arrays.copyOf(bytes, Math.max(count * 2, count + length));
+            System.arraycopy(values, 0, bytes, count, length);
+            count += length;
+        }
+
+        void varint(int value) {
+            while ((value & ~0x7F) != 0) {
+                write((byte) (value & 0x7F | 0x80));
+                value >>>= 7;
+            }
+            write((byte) value);
+        }
+
+        void varlong(long value) {
+            while ((value & ~0x7FL) != 0) {
+                write((byte) (value & 0x7F | 0x80));
+                value >>>= 7;
+            }
+            write((byte) value);
+        }
+
+        void fixed(long value) {
+            for (int shift = 56; shift >= 0; shift -= 8) write((byte) (value >>> shift));
+        }
+    }
+}
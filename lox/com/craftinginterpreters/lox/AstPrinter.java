@@ -2,10 +2,36 @@ package com.craftinginterpreters.lox;
 
 class AstPrinter implements Expr.Visitor<String> {
     String print(Expr expr) {
-        System.out.println("How many times printed?");
         return expr.accept(this);
     }
 
+    /* The same string as print(), built in one pass without recursing. */
+    String printIterative(Expr expr) {
+        StringBuilder builder = new StringBuilder();
+        ExprWalker.walk(expr, new ExprWalker.Listener() {
+            @Override
+            public void enter(Expr expr) {
+                /* Every node but the root follows a space. */
+                if (builder.length() > 0) builder.append(" ");
+                if (expr instanceof Expr.Binary binary) {
+                    builder.append("(").append(binary.operator.lexeme);
+                } else if (expr instanceof Expr.Unary unary) {
+                    builder.append("(").append(unary.operator.lexeme);
+                } else if (expr instanceof Expr.Grouping) {
+                    builder.append("(group");
+                } else {
+                    builder.append(visitLiteralExpr((Expr.Literal) expr));
+                }
+            }
+
+            @Override
+            public void exit(Expr expr) {
+                if (!(expr instanceof Expr.Literal)) builder.append(")");
+            }
+        });
+        return builder.toString();
+    }
+
     @Override
     public String visitBinaryExpr(Expr.Binary expr) {
         return parenthesize(expr.operator.lexeme, expr.left, expr.right);
@@ -37,8 +63,6 @@ class AstPrinter implements Expr.Visitor<String> {
             builder.append(expr.accept(this));
         }
         builder.append(")");
-
-        System.out.println("Called builder.toString()");
         return builder.toString();
     }
 
@@ -0,0 +1,232 @@
+package com.craftinginterpreters.lox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Stream;
+
+/*
+ * `jlox --batch`: every script under some directories or glob patterns, one virtual thread per
+ * file, with at most `jobs` of them working at once. Output comes in the order the files were
+ * found, or with --keyed, as soon as each file is done with its path in front of every line.
+ * Ends with throughput, latency percentiles and error counts on stderr.
+ */
+final class Batch {
+    /* How a file went, worst last. The exit code is the worst one's. */
+    private static final int OK = 0;
+    private static final int RUNTIME_ERROR = 1;
+    private static final int SYNTAX_ERROR = 2;
+    private static final int FAILED = 3;
+
+    private final LoxEngine engine;
+    private final boolean printAst;
+    private final int jobs;
+    private final boolean keyed;
+
+    /* result is null when the file couldn't be processed, failure says why. */
+    private record Outcome(Path path, LoxEngine.Result result, String failure, String trace, long nanos, long bytes) {
+        int status() {
+            if (result == null) return FAILED;
+            if (result.hadError()) return SYNTAX_ERROR;
+            if (result.hadRuntimeError()) return RUNTIME_ERROR;
+            return OK;
+        }
+    }
+
+    Batch(LoxEngine engine, boolean printAst, int jobs, boolean keyed) {
+        this.engine = engine;
+        this.printAst = printAst;
+        this.jobs = jobs;
+        this.keyed = keyed;
+    }
+
+    /* Returns the exit code: 0, or what jlox would exit with for the worst file. */
+    int run(List<String> targets, PrintStream out, PrintStream err) throws IOException, InterruptedException {
+        List<Path> files = collect(targets);
+        if (files.isEmpty()) {
+            err.println("No scripts found.");
+            return 66;
+        }
+
+        long[] latencies = new long[files.size()];
+        long bytes = 0;
+        int[] counts = new int[FAILED + 1];
+        long start = System.nanoTime();
+        Semaphore permits = new Semaphore(jobs);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<Outcome>> futures = new ArrayList<>(files.size());
+            for (Path file : files) {
+                futures.add(executor.submit(() -> {
+                    permits.acquire();
+                    try {
+                        Outcome outcome = process(file);
+                        if (keyed) print(outcome, out, err);
+                        return outcome;
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            }
+
+            /* Waiting in order is what keeps the unkeyed output in order. */
+            for (int i = 0; i < futures.size(); i++) {
+                Outcome outcome = get(futures.get(i));
+                futures.set(i, null);
+                if (!keyed) print(outcome, out, err);
+                latencies[i] = outcome.nanos;
+                bytes += outcome.bytes;
+                counts[outcome.status()]++;
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+
+        double seconds = elapsed / 1e9;
+        double megabytes = bytes / (1024.0 * 1024.0);
+        Arrays.sort(latencies);
+        err.printf("Ran %d files, %.1f MB in %.2f s: %.1f files/s, %.1f MB/s.%n",
+                files.size(), megabytes, seconds, files.size() / seconds, megabytes / seconds);
+        err.printf("Latency p50 %.3f ms, p90 %.3f ms, p99 %.3f ms, max %.3f ms.%n",
+                percentile(latencies, 0.50), percentile(latencies, 0.90), percentile(latencies, 0.99),
+                latencies[latencies.length - 1] / 1e6);
+        err.printf("%d ok, %d with syntax errors, %d with runtime errors, %d failed.%n",
+                counts[OK], counts[SYNTAX_ERROR], counts[RUNTIME_ERROR], counts[FAILED]);
+
+        if (counts[FAILED] > 0) return 74;
+        if (counts[SYNTAX_ERROR] > 0) return 65;
+        if (counts[RUNTIME_ERROR] > 0) return 70;
+        return 0;
+    }
+
+    private Outcome process(Path file) {
+        long start = System.nanoTime();
+        /* A trace is printed with the rest of the file's output, not as it happens. */
+        ByteArrayOutputStream trace = new ByteArrayOutputStream();
+        LoxEngine engine = this.engine.withTrace(new PrintStream(trace, true, StandardCharsets.UTF_8));
+        try {
+            long bytes = Files.size(file);
+            LoxEngine.Parse parse = engine.parse(file);
+            LoxEngine.Result result = printAst ? engine.print(parse) : engine.evaluate(parse);
+            return new Outcome(file, result, null, text(trace), System.nanoTime() - start, bytes);
+        } catch (IOException error) {
+            return new Outcome(file, null, "Can't read: " + error, text(trace), System.nanoTime() - start, 0);
+        } catch (RuntimeException | StackOverflowError error) {
+            /* A bug shouldn't take the whole batch down. */
+            return new Outcome(file, null, "Failed: " + error, text(trace), System.nanoTime() - start, 0);
+        }
+    }
+
+    private static String text(ByteArrayOutputStream bytes) {
+        return bytes.toString(StandardCharsets.UTF_8);
+    }
+
+    private static Outcome get(Future<Outcome> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException error) {
+            /* process() catches everything a script can cause. */
+            throw new IllegalStateException("Batch task failed.", error.getCause());
+        }
+    }
+
+    /*
+     * Renders the whole file's output first, so lines from different files never interleave.
+     * Errors always carry the path, the trace and values only when keyed, since then they come
+     * in any order.
+     */
+    private void print(Outcome outcome, PrintStream out, PrintStream err) {
+        String prefix = outcome.path + ": ";
+        ByteArrayOutputStream outBytes = new ByteArrayOutputStream();
+        ByteArrayOutputStream errBytes = new ByteArrayOutputStream();
+        if (outcome.result == null) {
+            new PrintStream(errBytes, true, StandardCharsets.UTF_8).println(outcome.failure);
+        } else {
+            Lox.report(outcome.result, new PrintStream(outBytes, true, StandardCharsets.UTF_8),
+                    new PrintStream(errBytes, true, StandardCharsets.UTF_8));
+        }
+        /* Same order as a single script: the trace, then the value. */
+        String outText = outcome.trace + text(outBytes);
+        if (keyed) outText = prefixed(prefix, outText);
+        String errText = prefixed(prefix, text(errBytes));
+        synchronized (this) {
+            out.print(outText);
+            err.print(errText);
+        }
+    }
+
+    private static String prefixed(String prefix, String text) {
+        if (text.isEmpty()) return text;
+        StringBuilder builder = new StringBuilder(text.length() + prefix.length());
+        for (String line : text.split("\n", -1)) {
+            if (line.isEmpty()) continue;
+            builder.append(prefix).append(line).append('\n');
+        }
+        return builder.toString();
+    }
+
+    /* Nearest rank, in milliseconds. */
+    private static double percentile(long[] sorted, double fraction) {
+        int rank = (int) Math.ceil(fraction * sorted.length);
+        return sorted[Math.max(rank - 1, 0)] / 1e6;
+    }
+
+    /*
+     * Directories give all their .lox files, globs all the files they match, anything else is
+     * taken as a file. Each target's files come sorted, and a file listed twice runs once.
+     */
+    static List<Path> collect(List<String> targets) throws IOException {
+        Set<Path> files = new LinkedHashSet<>();
+        for (String target : targets) {
+            if (isGlob(target)) {
+                PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + target);
+                Path base = base(target);
+                if (!Files.isDirectory(base)) continue;
+                try (Stream<Path> paths = Files.walk(base)) {
+                    paths.filter(path -> Files.isRegularFile(path) && matcher.matches(path))
+                        .sorted().forEach(files::add);
+                }
+            } else if (Files.isDirectory(Paths.get(target))) {
+                try (Stream<Path> paths = Files.walk(Paths.get(target))) {
+                    paths.filter(path -> Files.isRegularFile(path) && path.toString().endsWith(".lox"))
+                        .sorted().forEach(files::add);
+                }
+            } else {
+                /* A missing file is reported as that file failing. */
+                files.add(Paths.get(target));
+            }
+        }
+        return new ArrayList<>(files);
+    }
+
+    private static boolean isGlob(String target) {
+        for (int i = 0; i < target.length(); i++) {
+            if ("*?[{".indexOf(target.charAt(i)) >= 0) return true;
+        }
+        return false;
+    }
+
+    /* The directories in front of the first segment with a wildcard. Empty is the current one. */
+    private static Path base(String glob) {
+        String[] segments = glob.split("/", -1);
+        List<String> fixed = new ArrayList<>();
+        for (int i = 0; i < segments.length - 1 && !isGlob(segments[i]); i++) fixed.add(segments[i]);
+        if (fixed.isEmpty()) return Paths.get("");
+        if (fixed.get(0).isEmpty()) return Paths.get("/" + String.join("/", fixed.subList(1, fixed.size())));
+        return Paths.get(String.join("/", fixed));
+    }
+}
@@ -0,0 +1,131 @@
+package com.craftinginterpreters.lox;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+/* Where the Scanner gets its characters from. Offsets are relative to the current window. */
+interface CharSource {
+    char charAt(int index);
+
+    boolean isAtEnd(int index);
+
+    String substring(int start, int end);
+
+    /* The Scanner promises never to look before `index` again. Returns how far offsets shifted. */
+    int release(int index);
+
+    static CharSource of(String source) {
+        return new StringSource(source, source.length());
+    }
+
+    /* Only the characters before `end`, for scanning one slice of a larger source. */
+    static CharSource of(String source, int end) {
+        return new StringSource(source, end);
+    }
+
+    static CharSource of(Reader reader) {
+        return new ReaderSource(reader);
+    }
+
+    /* The whole source is already in memory, so there is nothing to release. */
+    final class StringSource implements CharSource {
+        private final String source;
+        private final int end;
+
+        StringSource(String source, int end) {
+            this.source = source;
+            this.end = end;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return source.charAt(index);
+        }
+
+        @Override
+        public boolean isAtEnd(int index) {
+            return index >= end;
+        }
+
+        @Override
+        public String substring(int start, int end) {
+            return source.substring(start, end);
+        }
+
+        @Override
+        public int release(int index) {
+            return 0;
+        }
+    }
+
+    /* Reads in bounded chunks. Only the lexeme being scanned has to stay in the buffer. */
+    final class ReaderSource implements CharSource {
+        private static final int CHUNK = 8192;
+
+        private final Reader reader;
+        private char[] buffer = new char[CHUNK * 2];
+        private int limit = 0;
+        private boolean eof = false;
+
+        ReaderSource(Reader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index >= limit) fill(index);
+            return buffer[index];
+        }
+
+        @Override
+        public boolean isAtEnd(int index) {
+            return index >= limit && !fill(index);
+        }
+
+        @Override
+        public String substring(int start, int end) {
+            return new String(buffer, start, end - start);
+        }
+
+        @Override
+        public int release(int index) {
+            /* Compacting costs a copy, so only bother once a whole chunk is dead. */
+            if (index < CHUNK) return 0;
+
+            limit -= index;
+            if (buffer.length > CHUNK * 4 && limit < CHUNK) {
+                /* A huge lexeme made us grow. Give the memory back. */
+                char[] smaller = new char[CHUNK * 2];
+                System.arraycopy(buffer, index, smaller, 0, limit);
+                buffer = smaller;
+            } else {
+                System.arraycopy(buffer, index, buffer, 0, limit);
+            }
+            return index;
+        }
+
+        /* Read until `index` is in the buffer. False if the input ran out first. */
+        private boolean fill(int index) {
+            try {
+                while (index >= limit && !eof) {
+                    if (limit == buffer.length) {
+                        /* The live lexeme fills the whole buffer. */
+                        buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                    }
+                    int read = reader.read(buffer, limit, buffer.length - limit);
+                    if (read < 0) {
+                        eof = true;
+                        reader.close();
+                    } else {
+                        limit += read;
+                    }
+                }
+            } catch (IOException error) {
+                throw new UncheckedIOException(error);
+            }
+            return index < limit;
+        }
+    }
+}
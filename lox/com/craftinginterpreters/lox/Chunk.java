@@ -0,0 +1,137 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Arrays;
+
+/*
+ * Compiled bytecode for one expression: the instructions, a constant pool split into numbers
+ * and strings, and a run-length line table. Never changes once compiled, so one Chunk can be
+ * run any number of times, by any number of VMs.
+ */
+final class Chunk {
+    /* Push a constant. The operand is a 16-bit big-endian index, 32-bit for the _LONG forms. */
+    static final byte OP_NUMBER = 0;
+    static final byte OP_NUMBER_LONG = 1;
+    static final byte OP_STRING = 2;
+    static final byte OP_STRING_LONG = 3;
+    static final byte OP_NIL = 4;
+    static final byte OP_TRUE = 5;
+    static final byte OP_FALSE = 6;
+    static final byte OP_POP = 7;
+    static final byte OP_EQUAL = 8;
+    static final byte OP_NOT_EQUAL = 9;
+    static final byte OP_GREATER = 10;
+    static final byte OP_GREATER_EQUAL = 11;
+    static final byte OP_LESS = 12;
+    static final byte OP_LESS_EQUAL = 13;
+    static final byte OP_ADD = 14;
+    static final byte OP_SUBTRACT = 15;
+    static final byte OP_MULTIPLY = 16;
+    static final byte OP_DIVIDE = 17;
+    static final byte OP_NOT = 18;
+    static final byte OP_NEGATE = 19;
+    /* Jumps take a 32-bit offset from the end of the instruction. The conditional one doesn't pop. */
+    static final byte OP_JUMP = 20;
+    static final byte OP_JUMP_IF_FALSE = 21;
+    static final byte OP_RETURN = 22;
+
+    private byte[] code = new byte[64];
+    private int count = 0;
+    private double[] numbers = new double[16];
+    private int numberCount = 0;
+    private String[] strings = new String[4];
+    private int stringCount = 0;
+    /* Each run starts at an offset and keeps its line until the next run. */
+    private int[] runStarts = new int[16];
+    private int[] runLines = new int[16];
+    private int runCount = 0;
+    /* The deepest the stack gets, so a VM can size it once. */
+    int maxStack = 0;
+
+    void write(byte op, int line) {
+        if (runCount == 0 || runLines[runCount - 1] != line) {
+            if (runCount == runStarts.length) {
+                runStarts = Arrays.copyOf(runStarts, runCount * 2);
+                runLines = Arrays.copyOf(runLines, runCount * 2);
+            }
+            runStarts[runCount] = count;
+            runLines[runCount] = line;
+            runCount++;
+        }
+        append(op);
+    }
+
+    void writeShort(int value) {
+        append((byte) (value >>> 8));
+        append((byte) value);
+    }
+
+    void writeInt(int value) {
+        writeShort(value >>> 16);
+        writeShort(value);
+    }
+
+    /* Overwrites the four bytes at offset. Used to patch jumps once the target is known. */
+    void patchInt(int offset, int value) {
+        code[offset] = (byte) (value >>> 24);
+        code[offset + 1] = (byte) (value >>> 16);
+        code[offset + 2] = (byte) (value >>> 8);
+        code[offset + 3] = (byte) value;
+    }
+
+    private void append(byte value) {
+        if (count == code.length) code = Arrays.copyOf(code, count * 2);
+        code[count++] = value;
+    }
+
+    int addNumber(double value) {
+        if (numberCount == numbers.length) numbers = Arrays.copyOf(numbers, numberCount * 2);
+        numbers[numberCount] = value;
+        return numberCount++;
+    }
+
+    int addString(String value) {
+        if (stringCount == strings.length) strings = Arrays.copyOf(strings, stringCount * 2);
+        strings[stringCount] = value;
+        return stringCount++;
+    }
+
+    /* Drops the slack from building, once the compiler is done. */
+    void trim() {
+        code = Arrays.copyOf(code, count);
+        numbers = Arrays.copyOf(numbers, numberCount);
+        strings = Arrays.copyOf(strings, stringCount);
+        runStarts = Arrays.copyOf(runStarts, runCount);
+        runLines = Arrays.copyOf(runLines, runCount);
+    }
+
+    int count() {
+        return count;
+    }
+
+    /* The arrays themselves. The VM reads them in its loop. */
+    byte[] code() {
+        return code;
+    }
+
+    double[] numbers() {
+        return numbers;
+    }
+
+    String[] strings() {
+        return strings;
+    }
+
+    int line(int offset) {
+        int low = 0;
+        int high = runCount - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (runStarts[middle] <= offset) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return runLines[low];
+    }
+}
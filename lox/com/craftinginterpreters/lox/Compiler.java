@@ -0,0 +1,200 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ * Compiles an Expr into a Chunk for the VM. Each distinct constant goes in the pool once.
+ * Walks the tree with a stack on the heap, like ExprWalker, so any tree the Parser can build
+ * compiles. A frame remembers how many of its children are done, since the comma and the
+ * ternary emit code between them, and the ternary also keeps its jumps to patch.
+ */
+final class Compiler {
+    private final Chunk chunk = new Chunk();
+    private final Map<Long, Integer> numbers = new HashMap<>();
+    private final Map<String, Integer> strings = new HashMap<>();
+    /* Literals carry no token, so they get the line of the last operator we saw. */
+    private int line = 1;
+    private int depth = 0;
+
+    /* Nodes being compiled, how far along each is, and a ternary's stack depth and pending jump. */
+    private Expr[] pending = new Expr[16];
+    private int[] stages = new int[16];
+    private int[] depths = new int[16];
+    private int[] jumps = new int[16];
+    private int frames = 0;
+
+    private Compiler() {}
+
+    static Chunk compile(Expr expression) {
+        Compiler compiler = new Compiler();
+        compiler.emit(expression);
+        compiler.chunk.write(Chunk.OP_RETURN, compiler.line);
+        compiler.chunk.trim();
+        return compiler.chunk;
+    }
+
+    private void emit(Expr root) {
+        open(root);
+        while (frames > 0) {
+            int frame = frames - 1;
+            Expr expr = pending[frame];
+            int stage = stages[frame]++;
+
+            if (expr instanceof Expr.Literal literal) {
+                frames--;
+                literal(literal.value);
+            } else if (expr instanceof Expr.Grouping grouping) {
+                /* A group is its inside. */
+                replace(grouping.expression);
+            } else if (expr instanceof Expr.Unary unary) {
+                if (stage == 0) {
+                    open(unary.right);
+                } else {
+                    frames--;
+                    line = unary.operator.line;
+                    chunk.write(unary.operator.type == TokenType.BANG ? Chunk.OP_NOT : Chunk.OP_NEGATE, line);
+                }
+            } else {
+                Expr.Binary binary = (Expr.Binary) expr;
+                switch (binary.operator.type) {
+                    case TokenType.COMMA: comma(binary, stage); break;
+                    case TokenType.COLON: ternary(binary, stage); break;
+                    default:
+                        if (stage == 0) {
+                            /* Right first, so left is compiled first. */
+                            open(binary.right);
+                            open(binary.left);
+                        } else {
+                            frames--;
+                            line = binary.operator.line;
+                            chunk.write(operation(binary.operator.type), line);
+                            depth--;
+                        }
+                }
+            }
+        }
+    }
+
+    private void literal(Object value) {
+        if (value == null) {
+            chunk.write(Chunk.OP_NIL, line);
+        } else if (value instanceof Boolean) {
+            chunk.write((boolean) value ? Chunk.OP_TRUE : Chunk.OP_FALSE, line);
+        } else if (value instanceof Double) {
+            /* Keyed on the bits, so 0.0 and -0.0 stay two constants. */
+            int index = numbers.computeIfAbsent(Double.doubleToRawLongBits((double) value),
+                    bits -> chunk.addNumber((double) value));
+            constant(Chunk.OP_NUMBER, Chunk.OP_NUMBER_LONG, index);
+        } else {
+            int index = strings.computeIfAbsent((String) value, chunk::addString);
+            constant(Chunk.OP_STRING, Chunk.OP_STRING_LONG, index);
+        }
+        push();
+    }
+
+    /* left, pop, right. */
+    private void comma(Expr.Binary expr, int stage) {
+        if (stage == 0) {
+            open(expr.left);
+            return;
+        }
+        line = expr.operator.line;
+        chunk.write(Chunk.OP_POP, line);
+        depth--;
+        replace(expr.right);
+    }
+
+    /* cond, jump-if-false to else, pop, then, jump to end, else: pop, else, end. */
+    private void ternary(Expr.Binary expr, int stage) {
+        int frame = frames - 1;
+        Expr.Binary question = (Expr.Binary) expr.left;
+        switch (stage) {
+            case 0:
+                depths[frame] = depth;
+                open(question.left);
+                break;
+            case 1:
+                line = question.operator.line;
+                jumps[frame] = jump(Chunk.OP_JUMP_IF_FALSE);
+                chunk.write(Chunk.OP_POP, line);
+                depth--;
+                open(question.right);
+                break;
+            case 2: {
+                int endJump = jump(Chunk.OP_JUMP);
+                /* The else side starts again with just the condition on the stack. */
+                patch(jumps[frame]);
+                jumps[frame] = endJump;
+                depth = depths[frame] + 1;
+                chunk.write(Chunk.OP_POP, expr.operator.line);
+                depth--;
+                open(expr.right);
+                break;
+            }
+            default:
+                frames--;
+                patch(jumps[frame]);
+        }
+    }
+
+    private void open(Expr expr) {
+        if (frames == pending.length) {
+            pending = Arrays.copyOf(pending, frames * 2);
+            stages = Arrays.copyOf(stages, frames * 2);
+            depths = Arrays.copyOf(depths, frames * 2);
+            jumps = Arrays.copyOf(jumps, frames * 2);
+        }
+        pending[frames] = expr;
+        stages[frames++] = 0;
+    }
+
+    /* The top frame is done with, and expr is compiled in its place. */
+    private void replace(Expr expr) {
+        pending[frames - 1] = expr;
+        stages[frames - 1] = 0;
+    }
+
+    private static byte operation(TokenType type) {
+        switch (type) {
+            case TokenType.EQUAL_EQUAL: return Chunk.OP_EQUAL;
+            case TokenType.BANG_EQUAL: return Chunk.OP_NOT_EQUAL;
+            case TokenType.GREATER: return Chunk.OP_GREATER;
+            case TokenType.GREATER_EQUAL: return Chunk.OP_GREATER_EQUAL;
+            case TokenType.LESS: return Chunk.OP_LESS;
+            case TokenType.LESS_EQUAL: return Chunk.OP_LESS_EQUAL;
+            case TokenType.PLUS: return Chunk.OP_ADD;
+            case TokenType.MINUS: return Chunk.OP_SUBTRACT;
+            case TokenType.STAR: return Chunk.OP_MULTIPLY;
+            case TokenType.SLASH: return Chunk.OP_DIVIDE;
+            default: throw new IllegalArgumentException("No instruction for " + type + ".");
+        }
+    }
+
+    private void constant(byte op, byte longOp, int index) {
+        if (index <= 0xFFFF) {
+            chunk.write(op, line);
+            chunk.writeShort(index);
+        } else {
+            chunk.write(longOp, line);
+            chunk.writeInt(index);
+        }
+    }
+
+    /* Returns where the offset goes, for patch() once we know it. */
+    private int jump(byte op) {
+        chunk.write(op, line);
+        chunk.writeInt(0);
+        return chunk.count() - 4;
+    }
+
+    private void patch(int offset) {
+        chunk.patchInt(offset, chunk.count() - (offset + 4));
+    }
+
+    private void push() {
+        depth++;
+        if (depth > chunk.maxStack) chunk.maxStack = depth;
+    }
+}
@@ -0,0 +1,154 @@
+package com.craftinginterpreters.lox;
+
+/*
+ * Evaluates whatever only depends on literals ahead of time, with Lox semantics: number
+ * arithmetic, string +, comparisons, ==, ! truthiness, commas and ?: on a known condition.
+ * Groupings go too, the tree already says what binds to what. Anything that would be a
+ * runtime error is left for the Interpreter to report.
+ */
+class ConstantFolder implements Expr.Visitor<Expr>, ExprWalker.Fold<Expr> {
+    private int before = 0;
+    private int after = 0;
+
+    /* Doesn't recurse, so any tree the Parser can build can be folded. */
+    Expr fold(Expr expr) {
+        Expr folded = ExprWalker.fold(expr, this);
+        after += size(folded);
+        return folded;
+    }
+
+    /* Nodes seen vs. nodes left, over every fold() so far. */
+    int eliminated() {
+        return before - after;
+    }
+
+    int seen() {
+        return before;
+    }
+
+    /* expr.accept(folder) folds the whole tree through fold(), so it counts the same way. */
+    @Override
+    public Expr visitBinaryExpr(Expr.Binary expr) {
+        return fold(expr);
+    }
+
+    @Override
+    public Expr visitGroupingExpr(Expr.Grouping expr) {
+        return fold(expr);
+    }
+
+    @Override
+    public Expr visitLiteralExpr(Expr.Literal expr) {
+        return fold(expr);
+    }
+
+    @Override
+    public Expr visitUnaryExpr(Expr.Unary expr) {
+        return fold(expr);
+    }
+
+    @Override
+    public Expr literal(Expr.Literal expr) {
+        before++;
+        return expr;
+    }
+
+    @Override
+    public Expr grouping(Expr.Grouping expr, Expr inner) {
+        before++;
+        return inner;
+    }
+
+    @Override
+    public Expr unary(Expr.Unary expr, Expr right) {
+        before++;
+        if (right instanceof Expr.Literal literal) {
+            Object value = literal.value;
+            switch (expr.operator.type) {
+                case TokenType.BANG:
+                    return new Expr.Literal(!Interpreter.isTruthy(value));
+                case TokenType.MINUS:
+                    if (value instanceof Double) return new Expr.Literal(-(double) value);
+                    break;
+            }
+        }
+
+        return right == expr.right ? expr : new Expr.Unary(expr.operator, right);
+    }
+
+    @Override
+    public Expr binary(Expr.Binary expr, Expr left, Expr right) {
+        before++;
+        switch (expr.operator.type) {
+            case TokenType.COMMA:
+                /* A literal on the left can't do anything, not even fail. */
+                if (left instanceof Expr.Literal) return right;
+                break;
+            case TokenType.COLON:
+                /* The ?: arrives as (cond ? then) : else, with the ? node already rebuilt. */
+                if (left instanceof Expr.Binary question && question.operator.type == TokenType.QUESTION
+                        && question.left instanceof Expr.Literal condition) {
+                    /* The branch we drop would never have run. */
+                    return Interpreter.isTruthy(condition.value) ? question.right : right;
+                }
+                break;
+            default:
+                if (left instanceof Expr.Literal a && right instanceof Expr.Literal b) {
+                    Object value = evaluate(expr.operator.type, a.value, b.value);
+                    if (value != NO_VALUE) return new Expr.Literal(value);
+                }
+                break;
+        }
+
+        if (left == expr.left && right == expr.right) return expr;
+        return new Expr.Binary(left, expr.operator, right);
+    }
+
+    /* What evaluate() returns when the operation would be a runtime error. */
+    private static final Object NO_VALUE = new Object();
+
+    private static Object evaluate(TokenType operator, Object left, Object right) {
+        if (operator == TokenType.EQUAL_EQUAL) return Interpreter.isEqual(left, right);
+        if (operator == TokenType.BANG_EQUAL) return !Interpreter.isEqual(left, right);
+        if (operator == TokenType.PLUS && left instanceof String a && right instanceof String b) return a + b;
+        if (!(left instanceof Double) || !(right instanceof Double)) return NO_VALUE;
+
+        double a = (double) left;
+        double b = (double) right;
+        switch (operator) {
+            case TokenType.PLUS: return a + b;
+            case TokenType.MINUS: return a - b;
+            case TokenType.STAR: return a * b;
+            case TokenType.SLASH: return a / b;
+            case TokenType.GREATER: return a > b;
+            case TokenType.GREATER_EQUAL: return a >= b;
+            case TokenType.LESS: return a < b;
+            case TokenType.LESS_EQUAL: return a <= b;
+            default: return NO_VALUE;
+        }
+    }
+
+    private static int size(Expr expr) {
+        return ExprWalker.fold(expr, new ExprWalker.Fold<Integer>() {
+            @Override
+            public Integer literal(Expr.Literal expr) {
+                return 1;
+            }
+
+            @Override
+            public Integer grouping(Expr.Grouping expr, Integer inner) {
+                return inner + 1;
+            }
+
+            @Override
+            public Integer unary(Expr.Unary expr, Integer right) {
+                return right + 1;
+            }
+
+            @Override
+            public Integer binary(Expr.Binary expr, Integer left, Integer right) {
+                return left + right + 1;
+            }
+        });
+    }
+}
@@ -0,0 +1,18 @@
+package com.craftinginterpreters.lox;
+
+/* One reported error. */
+class Diagnostic {
+    final int line;
+    final String where;
+    final String message;
+
+    Diagnostic(int line, String where, String message) {
+        this.line = line;
+        this.where = where;
+        this.message = message;
+    }
+
+    public String toString() {
+        return "[line " + line + "] Error" + where + ": " + message;
+    }
+}
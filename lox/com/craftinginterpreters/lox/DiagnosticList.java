@@ -0,0 +1,45 @@
+package com.craftinginterpreters.lox;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/* Collects errors in order. Trace output goes to a stream, if there is one. */
+class DiagnosticList implements Diagnostics {
+    private final Level level;
+    private final PrintStream trace;
+    private final List<Diagnostic> errors = new ArrayList<>();
+
+    DiagnosticList() {
+        this(Level.ERRORS, null);
+    }
+
+    DiagnosticList(Level level, PrintStream trace) {
+        this.level = level;
+        this.trace = trace;
+    }
+
+    @Override
+    public Level level() {
+        return level;
+    }
+
+    @Override
+    public void error(int line, String where, String message) {
+        if (level == Level.OFF) return;
+        errors.add(new Diagnostic(line, where, message));
+    }
+
+    @Override
+    public void trace(String message) {
+        if (level == Level.TRACE) trace.println(message);
+    }
+
+    List<Diagnostic> errors() {
+        return errors;
+    }
+
+    boolean hasErrors() {
+        return !errors.isEmpty();
+    }
+}
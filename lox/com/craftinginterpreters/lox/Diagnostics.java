@@ -0,0 +1,31 @@
+package com.craftinginterpreters.lox;
+
+/* Where the Scanner and Parser send errors and trace output instead of the console. */
+interface Diagnostics {
+    enum Level { OFF, ERRORS, TRACE }
+
+    /* Drops everything. The default, so nothing is paid for unless someone listens. */
+    Diagnostics NONE = new Diagnostics() {
+        @Override
+        public Level level() {
+            return Level.OFF;
+        }
+
+        @Override
+        public void error(int line, String where, String message) {}
+
+        @Override
+        public void trace(String message) {}
+    };
+
+    Level level();
+
+    void error(int line, String where, String message);
+
+    void trace(String message);
+
+    /* Checked once at construction, so a disabled trace is a constant false branch. */
+    default boolean tracing() {
+        return level() == Level.TRACE;
+    }
+}
@@ -0,0 +1,35 @@
+package com.craftinginterpreters.lox;
+
+/* How the Parser builds its nodes. Every Expr it returns came from one of these. */
+interface ExprFactory {
+    Expr binary(Expr left, Token operator, Expr right);
+
+    Expr grouping(Expr expression);
+
+    Expr literal(Object value);
+
+    Expr unary(Token operator, Expr right);
+
+    /* A new node every time, as the Parser always did. */
+    ExprFactory PLAIN = new ExprFactory() {
+        @Override
+        public Expr binary(Expr left, Token operator, Expr right) {
+            return new Expr.Binary(left, operator, right);
+        }
+
+        @Override
+        public Expr grouping(Expr expression) {
+            return new Expr.Grouping(expression);
+        }
+
+        @Override
+        public Expr literal(Object value) {
+            return new Expr.Literal(value);
+        }
+
+        @Override
+        public Expr unary(Token operator, Expr right) {
+            return new Expr.Unary(operator, right);
+        }
+    };
+}
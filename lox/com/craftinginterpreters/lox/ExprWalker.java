@@ -0,0 +1,88 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * Visits an Expr tree with a stack on the heap instead of through accept(). A visitor that
+ * recurses dies somewhere around ten thousand levels deep, this only runs out of memory.
+ */
+final class ExprWalker {
+    /* Called on the way down and on the way back up, children left to right in between. */
+    interface Listener {
+        void enter(Expr expr);
+
+        void exit(Expr expr);
+    }
+
+    /* A bottom-up visitor. Every node gets the results of its children. */
+    interface Fold<R> {
+        R literal(Expr.Literal expr);
+
+        R grouping(Expr.Grouping expr, R inner);
+
+        R unary(Expr.Unary expr, R right);
+
+        R binary(Expr.Binary expr, R left, R right);
+    }
+
+    private ExprWalker() {}
+
+    static void walk(Expr root, Listener listener) {
+        Expr[] nodes = new Expr[16];
+        boolean[] visited = new boolean[16];
+        int top = 0;
+        nodes[top++] = root;
+
+        while (top > 0) {
+            Expr expr = nodes[--top];
+            if (visited[top]) {
+                visited[top] = false;
+                listener.exit(expr);
+                continue;
+            }
+
+            listener.enter(expr);
+            /* Come back to it once the children are done. Right is pushed first so left pops first. */
+            if (top + 3 > nodes.length) {
+                nodes = Arrays.copyOf(nodes, nodes.length * 2);
+                visited = Arrays.copyOf(visited, visited.length * 2);
+            }
+            visited[top] = true;
+            nodes[top++] = expr;
+            if (expr instanceof Expr.Binary binary) {
+                nodes[top++] = binary.right;
+                nodes[top++] = binary.left;
+            } else if (expr instanceof Expr.Unary unary) {
+                nodes[top++] = unary.right;
+            } else if (expr instanceof Expr.Grouping grouping) {
+                nodes[top++] = grouping.expression;
+            }
+        }
+    }
+
+    static <R> R fold(Expr root, Fold<R> fold) {
+        List<R> results = new ArrayList<>();
+        walk(root, new Listener() {
+            @Override
+            public void enter(Expr expr) {}
+
+            @Override
+            public void exit(Expr expr) {
+                int last = results.size() - 1;
+                if (expr instanceof Expr.Binary binary) {
+                    R right = results.remove(last);
+                    results.set(last - 1, fold.binary(binary, results.get(last - 1), right));
+                } else if (expr instanceof Expr.Unary unary) {
+                    results.set(last, fold.unary(unary, results.get(last)));
+                } else if (expr instanceof Expr.Grouping grouping) {
+                    results.set(last, fold.grouping(grouping, results.get(last)));
+                } else {
+                    results.add(fold.literal((Expr.Literal) expr));
+                }
+            }
+        });
+        return results.get(0);
+    }
+}
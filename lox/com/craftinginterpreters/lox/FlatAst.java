@@ -0,0 +1,216 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * An Expr tree packed into parallel arrays, about 14 bytes a node instead of an Expr, a Token
+ * and a boxed literal. Nodes are int handles and are stored children first, so the root is
+ * the last node and a plain loop from 0 visits every node after its children.
+ */
+final class FlatAst {
+    static final byte BINARY = 0;
+    static final byte UNARY = 1;
+    static final byte GROUPING = 2;
+    static final byte NUMBER = 3;
+    static final byte STRING = 4;
+    static final byte TRUE = 5;
+    static final byte FALSE = 6;
+    static final byte NIL = 7;
+
+    private static final TokenType[] TOKEN_TYPES = TokenType.values();
+    private static final String[] SPELLINGS = new String[TOKEN_TYPES.length];
+
+    static {
+        SPELLINGS[TokenType.COMMA.ordinal()] = ",";
+        SPELLINGS[TokenType.QUESTION.ordinal()] = "?";
+        SPELLINGS[TokenType.COLON.ordinal()] = ":";
+        SPELLINGS[TokenType.BANG.ordinal()] = "!";
+        SPELLINGS[TokenType.BANG_EQUAL.ordinal()] = "!=";
+        SPELLINGS[TokenType.EQUAL_EQUAL.ordinal()] = "==";
+        SPELLINGS[TokenType.GREATER.ordinal()] = ">";
+        SPELLINGS[TokenType.GREATER_EQUAL.ordinal()] = ">=";
+        SPELLINGS[TokenType.LESS.ordinal()] = "<";
+        SPELLINGS[TokenType.LESS_EQUAL.ordinal()] = "<=";
+        SPELLINGS[TokenType.MINUS.ordinal()] = "-";
+        SPELLINGS[TokenType.PLUS.ordinal()] = "+";
+        SPELLINGS[TokenType.STAR.ordinal()] = "*";
+        SPELLINGS[TokenType.SLASH.ordinal()] = "/";
+    }
+
+    private byte[] kinds;
+    /* Binary and unary operators, as TokenType ordinals. */
+    private byte[] operators;
+    private int[] lines;
+    /* Left child or operand. A NUMBER keeps its high bits here, a STRING its index in strings. */
+    private int[] lefts;
+    /* Right child. A NUMBER keeps its low bits here. */
+    private int[] rights;
+    private final List<String> strings = new ArrayList<>();
+    private int size = 0;
+    private int root = -1;
+
+    FlatAst() {
+        this(1024);
+    }
+
+    FlatAst(int capacity) {
+        kinds = new byte[capacity];
+        operators = new byte[capacity];
+        lines = new int[capacity];
+        lefts = new int[capacity];
+        rights = new int[capacity];
+    }
+
+    int binary(int left, TokenType operator, int line, int right) {
+        return add(BINARY, operator, line, left, right);
+    }
+
+    int unary(TokenType operator, int line, int operand) {
+        return add(UNARY, operator, line, operand, 0);
+    }
+
+    int grouping(int inner) {
+        return add(GROUPING, null, 0, inner, 0);
+    }
+
+    int number(double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        return add(NUMBER, null, 0, (int) (bits >>> 32), (int) bits);
+    }
+
+    int string(String value) {
+        strings.add(value);
+        return add(STRING, null, 0, strings.size() - 1, 0);
+    }
+
+    int bool(boolean value) {
+        return add(value ? TRUE : FALSE, null, 0, 0, 0);
+    }
+
+    int nil() {
+        return add(NIL, null, 0, 0, 0);
+    }
+
+    private int add(byte kind, TokenType operator, int line, int left, int right) {
+        if (size == kinds.length) {
+            int capacity = size * 2;
+            kinds = Arrays.copyOf(kinds, capacity);
+            operators = Arrays.copyOf(operators, capacity);
+            lines = Arrays.copyOf(lines, capacity);
+            lefts = Arrays.copyOf(lefts, capacity);
+            rights = Arrays.copyOf(rights, capacity);
+        }
+        kinds[size] = kind;
+        operators[size] = operator == null ? 0 : (byte) operator.ordinal();
+        lines[size] = line;
+        lefts[size] = left;
+        rights[size] = right;
+        return size++;
+    }
+
+    void root(int node) {
+        root = node;
+    }
+
+    int root() {
+        return root;
+    }
+
+    int size() {
+        return size;
+    }
+
+    byte kind(int node) {
+        return kinds[node];
+    }
+
+    TokenType operator(int node) {
+        return TOKEN_TYPES[operators[node]];
+    }
+
+    int line(int node) {
+        return lines[node];
+    }
+
+    /* The left child of a BINARY, the operand of a UNARY or GROUPING. */
+    int left(int node) {
+        return lefts[node];
+    }
+
+    int right(int node) {
+        return rights[node];
+    }
+
+    double number(int node) {
+        return Double.longBitsToDouble((long) lefts[node] << 32 | (rights[node] & 0xFFFFFFFFL));
+    }
+
+    String string(int node) {
+        return strings.get(lefts[node]);
+    }
+
+    /* What Expr.Literal would hold. */
+    Object value(int node) {
+        switch (kinds[node]) {
+            case NUMBER: return number(node);
+            case STRING: return string(node);
+            case TRUE: return true;
+            case FALSE: return false;
+            default: return null;
+        }
+    }
+
+    /* Bytes held by the arrays, not counting the literal strings. */
+    long footprint() {
+        return kinds.length * 2L + lines.length * 12L;
+    }
+
+    /* Shrinks the arrays to the nodes in use. */
+    void trim() {
+        kinds = Arrays.copyOf(kinds, size);
+        operators = Arrays.copyOf(operators, size);
+        lines = Arrays.copyOf(lines, size);
+        lefts = Arrays.copyOf(lefts, size);
+        rights = Arrays.copyOf(rights, size);
+    }
+
+    /* The adapter for existing visitors. Children come first, so one loop rebuilds the tree. */
+    Expr toExpr() {
+        if (root < 0) throw new IllegalStateException("The FlatAst has no root yet.");
+        Expr[] exprs = new Expr[root + 1];
+        for (int node = 0; node <= root; node++) {
+            switch (kinds[node]) {
+                case BINARY:
+                    exprs[node] = new Expr.Binary(exprs[lefts[node]], token(node), exprs[rights[node]]);
+                    break;
+                case UNARY:
+                    exprs[node] = new Expr.Unary(token(node), exprs[lefts[node]]);
+                    break;
+                case GROUPING:
+                    exprs[node] = new Expr.Grouping(exprs[lefts[node]]);
+                    break;
+                default:
+                    exprs[node] = new Expr.Literal(value(node));
+                    break;
+            }
+            /* The tree holds on to them now. */
+            if (kinds[node] <= GROUPING) {
+                exprs[lefts[node]] = null;
+                if (kinds[node] == BINARY) exprs[rights[node]] = null;
+            }
+        }
+        return exprs[root];
+    }
+
+    /* Rebuilds the whole Expr graph every time. To visit more than once, keep toExpr()'s tree instead. */
+    <R> R accept(Expr.Visitor<R> visitor) {
+        return toExpr().accept(visitor);
+    }
+
+    private Token token(int node) {
+        TokenType type = operator(node);
+        return new Token(type, SPELLINGS[type.ordinal()], null, lines[node]);
+    }
+}
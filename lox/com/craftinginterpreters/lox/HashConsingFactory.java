@@ -0,0 +1,172 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Objects;
+
+/*
+ * Builds each structurally distinct subtree once and hands out that node every time after, so
+ * repeated subexpressions share memory and a pass can cache per-node results by identity.
+ * Children are already canonical, so comparing them is ==. Lines are not part of the
+ * structure: a shared operator keeps the Token, and the line, of its first occurrence.
+ */
+final class HashConsingFactory implements ExprFactory {
+    private Expr[] table = new Expr[1024];
+    private int[] hashes = new int[1024];
+    private int unique = 0;
+    private int total = 0;
+
+    /* The canonical nodes remember their structural hash, so a parent never rehashes a subtree. */
+    private static final class Binary extends Expr.Binary {
+        final int hash;
+
+        Binary(Expr left, Token operator, Expr right, int hash) {
+            super(left, operator, right);
+            this.hash = hash;
+        }
+    }
+
+    private static final class Grouping extends Expr.Grouping {
+        final int hash;
+
+        Grouping(Expr expression, int hash) {
+            super(expression);
+            this.hash = hash;
+        }
+    }
+
+    private static final class Literal extends Expr.Literal {
+        final int hash;
+
+        Literal(Object value, int hash) {
+            super(value);
+            this.hash = hash;
+        }
+    }
+
+    private static final class Unary extends Expr.Unary {
+        final int hash;
+
+        Unary(Token operator, Expr right, int hash) {
+            super(operator, right);
+            this.hash = hash;
+        }
+    }
+
+    @Override
+    public Expr binary(Expr left, Token operator, Expr right) {
+        int hash = mix(31 * (31 * (31 + hash(left)) + operator.type.ordinal()) + hash(right));
+        int index = probe(hash);
+        for (Expr expr = table[index]; expr != null; expr = table[index]) {
+            if (hashes[index] == hash && expr instanceof Binary binary && binary.left == left
+                    && binary.operator.type == operator.type && binary.right == right) {
+                total++;
+                return expr;
+            }
+            index = next(index);
+        }
+        return insert(index, new Binary(left, operator, right, hash));
+    }
+
+    @Override
+    public Expr grouping(Expr expression) {
+        int hash = mix(37 * 31 + hash(expression));
+        int index = probe(hash);
+        for (Expr expr = table[index]; expr != null; expr = table[index]) {
+            if (hashes[index] == hash && expr instanceof Grouping grouping && grouping.expression == expression) {
+                total++;
+                return expr;
+            }
+            index = next(index);
+        }
+        return insert(index, new Grouping(expression, hash));
+    }
+
+    /* Double.equals() compares bits, so 0.0 and -0.0 stay apart and NaN matches itself. */
+    @Override
+    public Expr literal(Object value) {
+        int hash = mix(41 * 31 + Objects.hashCode(value));
+        int index = probe(hash);
+        for (Expr expr = table[index]; expr != null; expr = table[index]) {
+            if (hashes[index] == hash && expr instanceof Literal literal && Objects.equals(literal.value, value)) {
+                total++;
+                return expr;
+            }
+            index = next(index);
+        }
+        return insert(index, new Literal(value, hash));
+    }
+
+    @Override
+    public Expr unary(Token operator, Expr right) {
+        int hash = mix(31 * (43 * 31 + operator.type.ordinal()) + hash(right));
+        int index = probe(hash);
+        for (Expr expr = table[index]; expr != null; expr = table[index]) {
+            if (hashes[index] == hash && expr instanceof Unary unary && unary.operator.type == operator.type
+                    && unary.right == right) {
+                total++;
+                return expr;
+            }
+            index = next(index);
+        }
+        return insert(index, new Unary(operator, right, hash));
+    }
+
+    /* How many distinct nodes we built vs. how many the Parser asked for. */
+    int unique() {
+        return unique;
+    }
+
+    int total() {
+        return total;
+    }
+
+    /* Nodes asked for per node built. 1.0 means nothing was shared. */
+    double dedupRatio() {
+        return unique == 0 ? 1.0 : (double) total / unique;
+    }
+
+    /* Only ever called on nodes this factory built. */
+    private static int hash(Expr expr) {
+        if (expr instanceof Binary binary) return binary.hash;
+        if (expr instanceof Unary unary) return unary.hash;
+        if (expr instanceof Grouping grouping) return grouping.hash;
+        return ((Literal) expr).hash;
+    }
+
+    /* Spread the high bits, since we only look at the low ones. */
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private int probe(int hash) {
+        return hash & (table.length - 1);
+    }
+
+    private int next(int index) {
+        return (index + 1) & (table.length - 1);
+    }
+
+    private Expr insert(int index, Expr expr) {
+        table[index] = expr;
+        hashes[index] = hash(expr);
+        unique++;
+        total++;
+        if (unique * 2 > table.length) grow();
+        return expr;
+    }
+
+    private void grow() {
+        Expr[] oldTable = table;
+        int[] oldHashes = hashes;
+        table = new Expr[oldTable.length * 2];
+        hashes = new int[oldHashes.length * 2];
+
+        int mask = table.length - 1;
+        for (int i = 0; i < oldTable.length; i++) {
+            if (oldTable[i] == null) continue;
+            int index = oldHashes[i] & mask;
+            while (table[index] != null) index = (index + 1) & mask;
+            table[index] = oldTable[i];
+            hashes[index] = oldHashes[i];
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.craftinginterpreters.lox;
+
+/* Re-scans only the part of a TokenBuffer that an edit can have changed. */
+final class IncrementalScanner {
+    private IncrementalScanner() {}
+
+    /*
+     * Replace `removed` characters at `offset` with `inserted`. Only errors from the re-scanned
+     * window are reported, since the tail is copied over without being looked at.
+     */
+    static TokenBuffer edit(TokenBuffer old, int offset, int removed, String inserted, Diagnostics diagnostics) {
+        String before = old.source();
+        String source = before.substring(0, offset) + inserted + before.substring(offset + removed);
+        int shift = inserted.length() - removed;
+
+        /*
+         * A token can look up to one character past its end (a number peeks at "." and the digit
+         * after it), so any token ending right before the edit has to be scanned again too.
+         */
+        int restart = firstEndingAtOrAfter(old, offset - 1);
+        int from = restart > 0 ? old.start(restart - 1) + old.length(restart - 1) : 0;
+        int line = restart > 0 ? old.line(restart - 1) : 1;
+
+        TokenBuffer tokens = new TokenBuffer(source, old.lexemes(), old.size() + 16);
+        tokens.append(old, 0, restart, 0, 0);
+
+        Scanner scanner = new Scanner(source, from, source.length(), line, diagnostics);
+        int editEnd = offset + inserted.length();
+        int candidate = restart;
+        while (scanner.scanNext(tokens)) {
+            int last = tokens.size() - 1;
+            int start = tokens.start(last);
+            if (start < editEnd) continue;
+
+            /* Past the edit. If an old token started at the same text, the rest must be the same too. */
+            while (candidate < old.size() && old.start(candidate) + shift < start) candidate++;
+            if (candidate < old.size()
+                    && old.start(candidate) + shift == start
+                    && old.type(candidate) == tokens.type(last)
+                    && old.length(candidate) == tokens.length(last)) {
+                int lineShift = tokens.line(last) - old.line(candidate);
+                tokens.truncate(last);
+                tokens.append(old, candidate, old.size() - candidate, shift, lineShift);
+                return tokens;
+            }
+        }
+
+        /* Never lined up again, so we scanned to the end and the Scanner added EOF. */
+        return tokens;
+    }
+
+    private static int firstEndingAtOrAfter(TokenBuffer tokens, int offset) {
+        int low = 0;
+        int high = tokens.size() - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (tokens.start(middle) + tokens.length(middle) >= offset) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,423 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Arrays;
+
+/*
+ * Evaluates an Expr. Arithmetic goes through number(), which keeps a chain of numeric Binary
+ * nodes in doubles and only boxes the result at the top, instead of a Double per node.
+ *
+ * Recursing is fastest, but a visitor dies somewhere around ten thousand levels deep. So past
+ * MAX_DEPTH the rest of a subtree is evaluated with a stack on the heap instead, which keeps
+ * numbers unboxed too. Evaluating has no side effects, so where the switch happens can't show.
+ */
+class Interpreter implements Expr.Visitor<Object> {
+    static final int MAX_DEPTH = 1000;
+
+    /* In objects[], marks a value that is in numbers[] instead. */
+    private static final Object UNBOXED = new Object();
+
+    /* Set by number() when the value wasn't a number after all. The value is in boxed then. */
+    private boolean miss = false;
+    private Object boxed;
+    private int depth = 0;
+
+    /* iterate()'s stacks, kept for the next deep subtree. Nodes, whether their operands are pushed yet, values. */
+    private Expr[] pending = new Expr[16];
+    private boolean[] expanded = new boolean[16];
+    private Object[] objects = new Object[16];
+    private double[] numbers = new double[16];
+
+    Object evaluate(Expr expr) {
+        if (depth == MAX_DEPTH) return iterate(expr);
+        depth++;
+        try {
+            return expr.accept(this);
+        } finally {
+            depth--;
+        }
+    }
+
+    @Override
+    public Object visitLiteralExpr(Expr.Literal expr) {
+        return expr.value;
+    }
+
+    @Override
+    public Object visitGroupingExpr(Expr.Grouping expr) {
+        return evaluate(expr.expression);
+    }
+
+    @Override
+    public Object visitUnaryExpr(Expr.Unary expr) {
+        if (expr.operator.type == TokenType.BANG) return !isTruthy(evaluate(expr.right));
+        return boxed(number(expr));
+    }
+
+    @Override
+    public Object visitBinaryExpr(Expr.Binary expr) {
+        switch (expr.operator.type) {
+            case TokenType.COMMA:
+                evaluate(expr.left);
+                return evaluate(expr.right);
+            case TokenType.COLON:
+                return ternary(expr);
+            case TokenType.EQUAL_EQUAL:
+                return isEqual(evaluate(expr.left), evaluate(expr.right));
+            case TokenType.BANG_EQUAL:
+                return !isEqual(evaluate(expr.left), evaluate(expr.right));
+            case TokenType.GREATER:
+            case TokenType.GREATER_EQUAL:
+            case TokenType.LESS:
+            case TokenType.LESS_EQUAL:
+                return comparison(expr);
+            case TokenType.MINUS:
+            case TokenType.PLUS:
+            case TokenType.SLASH:
+            case TokenType.STAR:
+                return boxed(number(expr));
+            default:
+                /* The Parser only ever puts a ? under a :. */
+                throw new RuntimeError(expr.operator, "Unexpected operator.");
+        }
+    }
+
+    /* The Parser builds cond ? then : else as (cond ? then) : else. */
+    private Object ternary(Expr.Binary expr) {
+        Expr.Binary question = (Expr.Binary) expr.left;
+        if (isTruthy(evaluate(question.left))) return evaluate(question.right);
+        return evaluate(expr.right);
+    }
+
+    private Object comparison(Expr.Binary expr) {
+        double left = number(expr.left);
+        if (miss) {
+            Object value = take();
+            return binary(expr.operator, value, evaluate(expr.right));
+        }
+        double right = number(expr.right);
+        if (miss) return binary(expr.operator, left, take());
+
+        switch (expr.operator.type) {
+            case TokenType.GREATER: return left > right;
+            case TokenType.GREATER_EQUAL: return left >= right;
+            case TokenType.LESS: return left < right;
+            default: return left <= right;
+        }
+    }
+
+    /*
+     * The value of expr as a double, without boxing through numeric subtrees. A value that
+     * turns out not to be a number is a miss, handed back in boxed. The caller then finishes
+     * with the boxed rules, so operands are evaluated and errors reported in the same order.
+     */
+    private double number(Expr expr) {
+        if (depth == MAX_DEPTH) {
+            Object value = iterate(expr);
+            if (value instanceof Double number) return number;
+            return miss(value);
+        }
+        depth++;
+        try {
+            return unboxed(expr);
+        } finally {
+            depth--;
+        }
+    }
+
+    private double unboxed(Expr expr) {
+        if (expr instanceof Expr.Literal literal) {
+            if (literal.value instanceof Double value) return value;
+            return miss(literal.value);
+        }
+
+        if (expr instanceof Expr.Grouping grouping) return number(grouping.expression);
+
+        if (expr instanceof Expr.Unary unary && unary.operator.type == TokenType.MINUS) {
+            double right = number(unary.right);
+            if (miss) return miss(unary(unary.operator, take()));
+            return -right;
+        }
+
+        if (expr instanceof Expr.Binary binary && isArithmetic(binary.operator.type)) {
+            double left = number(binary.left);
+            if (miss) {
+                Object value = take();
+                return miss(binary(binary.operator, value, evaluate(binary.right)));
+            }
+            double right = number(binary.right);
+            if (miss) return miss(binary(binary.operator, left, take()));
+
+            switch (binary.operator.type) {
+                case TokenType.MINUS: return left - right;
+                case TokenType.PLUS: return left + right;
+                case TokenType.SLASH: return left / right;
+                default: return left * right;
+            }
+        }
+
+        Object value = evaluate(expr);
+        if (value instanceof Double number) return number;
+        return miss(value);
+    }
+
+    /* The stack on the heap on its own, for a caller that already went MAX_DEPTH deep itself. */
+    Object evaluateDeep(Expr expr) {
+        return iterate(expr);
+    }
+
+    /*
+     * evaluate() without recursing. Every operator but the ternary evaluates left, then right,
+     * so operands are evaluated and errors reported in the same order as the recursive path.
+     */
+    private Object iterate(Expr root) {
+        int frames = 0;
+        int values = 0;
+        pending[frames] = root;
+        expanded[frames++] = false;
+
+        while (frames > 0) {
+            Expr expr = pending[frames - 1];
+            if (expr instanceof Expr.Literal literal) {
+                frames--;
+                if (values == objects.length) growValues();
+                set(values++, literal.value);
+                continue;
+            }
+
+            if (expr instanceof Expr.Grouping grouping) {
+                /* A group is its inside. */
+                pending[frames - 1] = grouping.expression;
+                continue;
+            }
+
+            if (!expanded[frames - 1]) {
+                expanded[frames - 1] = true;
+                if (frames + 2 > pending.length) growFrames();
+                if (expr instanceof Expr.Unary unary) {
+                    pending[frames] = unary.right;
+                    expanded[frames++] = false;
+                    continue;
+                }
+                Expr.Binary binary = (Expr.Binary) expr;
+                switch (binary.operator.type) {
+                    case TokenType.COLON:
+                        /* Just the condition for now. */
+                        pending[frames] = ((Expr.Binary) binary.left).left;
+                        expanded[frames++] = false;
+                        break;
+                    case TokenType.QUESTION:
+                        throw new RuntimeError(binary.operator, "Unexpected operator.");
+                    default:
+                        /* Right first, so left is evaluated first. */
+                        pending[frames] = binary.right;
+                        expanded[frames++] = false;
+                        pending[frames] = binary.left;
+                        expanded[frames++] = false;
+                }
+                continue;
+            }
+
+            /* The operands are on the value stack. */
+            if (expr instanceof Expr.Unary unary) {
+                frames--;
+                unary(unary.operator, values - 1);
+                continue;
+            }
+
+            Expr.Binary binary = (Expr.Binary) expr;
+            if (binary.operator.type == TokenType.COLON) {
+                boolean condition = truthy(--values);
+                objects[values] = null;
+                /* The branch taken replaces the ternary. */
+                Expr.Binary question = (Expr.Binary) binary.left;
+                pending[frames - 1] = condition ? question.right : binary.right;
+                expanded[frames - 1] = false;
+                continue;
+            }
+
+            frames--;
+            values--;
+            binary(binary.operator, values - 1, values);
+            objects[values] = null;
+        }
+
+        Object value = value(0);
+        objects[0] = null;
+        return value;
+    }
+
+    /* Replaces the operand in slot with the result. */
+    private void unary(Token operator, int slot) {
+        if (operator.type == TokenType.BANG) {
+            objects[slot] = !truthy(slot);
+        } else if (objects[slot] == UNBOXED) {
+            numbers[slot] = -numbers[slot];
+        } else {
+            set(slot, unary(operator, objects[slot]));
+        }
+    }
+
+    /* Replaces the left operand with the result. Anything not both numbers takes the boxed rules. */
+    private void binary(Token operator, int left, int right) {
+        boolean unboxed = objects[left] == UNBOXED && objects[right] == UNBOXED;
+        switch (operator.type) {
+            case TokenType.COMMA:
+                objects[left] = objects[right];
+                numbers[left] = numbers[right];
+                return;
+            case TokenType.EQUAL_EQUAL:
+            case TokenType.BANG_EQUAL: {
+                boolean equal = unboxed
+                    ? Double.doubleToLongBits(numbers[left]) == Double.doubleToLongBits(numbers[right])
+                    : isEqual(value(left), value(right));
+                objects[left] = equal == (operator.type == TokenType.EQUAL_EQUAL);
+                return;
+            }
+            default:
+                if (!unboxed) {
+                    set(left, binary(operator, value(left), value(right)));
+                    return;
+                }
+        }
+
+        double a = numbers[left];
+        double b = numbers[right];
+        switch (operator.type) {
+            case TokenType.MINUS: numbers[left] = a - b; break;
+            case TokenType.PLUS: numbers[left] = a + b; break;
+            case TokenType.SLASH: numbers[left] = a / b; break;
+            case TokenType.STAR: numbers[left] = a * b; break;
+            case TokenType.GREATER: objects[left] = a > b; break;
+            case TokenType.GREATER_EQUAL: objects[left] = a >= b; break;
+            case TokenType.LESS: objects[left] = a < b; break;
+            default: objects[left] = a <= b; break;
+        }
+    }
+
+    private Object value(int slot) {
+        Object value = objects[slot];
+        return value == UNBOXED ? (Object) numbers[slot] : value;
+    }
+
+    private void set(int slot, Object value) {
+        if (value instanceof Double number) {
+            objects[slot] = UNBOXED;
+            numbers[slot] = number;
+        } else {
+            objects[slot] = value;
+        }
+    }
+
+    private boolean truthy(int slot) {
+        return objects[slot] == UNBOXED || isTruthy(objects[slot]);
+    }
+
+    private void growFrames() {
+        pending = Arrays.copyOf(pending, pending.length * 2);
+        expanded = Arrays.copyOf(expanded, expanded.length * 2);
+    }
+
+    private void growValues() {
+        objects = Arrays.copyOf(objects, objects.length * 2);
+        numbers = Arrays.copyOf(numbers, numbers.length * 2);
+    }
+
+    private static boolean isArithmetic(TokenType type) {
+        return type == TokenType.MINUS || type == TokenType.PLUS
+            || type == TokenType.SLASH || type == TokenType.STAR;
+    }
+
+    private double miss(Object value) {
+        miss = true;
+        boxed = value;
+        return 0;
+    }
+
+    private Object take() {
+        miss = false;
+        Object value = boxed;
+        boxed = null;
+        return value;
+    }
+
+    private Object boxed(double value) {
+        if (miss) return take();
+        return value;
+    }
+
+    /*
+     * The boxed rules for unary minus and the operators number() handles. Only reached when an
+     * operand isn't a number. The Node layer and iterate() fall back on them too.
+     */
+    static Object unary(Token operator, Object right) {
+        checkNumberOperand(operator, right);
+        return -(double) right;
+    }
+
+    static Object binary(Token operator, Object left, Object right) {
+        switch (operator.type) {
+            case TokenType.PLUS:
+                if (left instanceof Double && right instanceof Double) return (double) left + (double) right;
+                if (left instanceof String && right instanceof String) return (String) left + (String) right;
+                throw new RuntimeError(operator, "Operands must be two numbers or two strings.");
+            case TokenType.MINUS:
+                checkNumberOperands(operator, left, right);
+                return (double) left - (double) right;
+            case TokenType.SLASH:
+                checkNumberOperands(operator, left, right);
+                return (double) left / (double) right;
+            case TokenType.STAR:
+                checkNumberOperands(operator, left, right);
+                return (double) left * (double) right;
+            case TokenType.GREATER:
+                checkNumberOperands(operator, left, right);
+                return (double) left > (double) right;
+            case TokenType.GREATER_EQUAL:
+                checkNumberOperands(operator, left, right);
+                return (double) left >= (double) right;
+            case TokenType.LESS:
+                checkNumberOperands(operator, left, right);
+                return (double) left < (double) right;
+            default:
+                checkNumberOperands(operator, left, right);
+                return (double) left <= (double) right;
+        }
+    }
+
+    private static void checkNumberOperand(Token operator, Object operand) {
+        if (operand instanceof Double) return;
+        throw new RuntimeError(operator, "Operand must be a number.");
+    }
+
+    private static void checkNumberOperands(Token operator, Object left, Object right) {
+        if (left instanceof Double && right instanceof Double) return;
+        throw new RuntimeError(operator, "Operands must be numbers.");
+    }
+
+    /* nil and false are falsey, everything else is truthy. */
+    static boolean isTruthy(Object object) {
+        if (object == null) return false;
+        if (object instanceof Boolean) return (boolean) object;
+        return true;
+    }
+
+    static boolean isEqual(Object a, Object b) {
+        if (a == null && b == null) return true;
+        if (a == null) return false;
+        return a.equals(b);
+    }
+
+    static String stringify(Object object) {
+        if (object == null) return "nil";
+
+        if (object instanceof Double) {
+            String text = object.toString();
+            if (text.endsWith(".0")) {
+                text = text.substring(0, text.length() - 2);
+            }
+            return text;
+        }
+
+        return object.toString();
+    }
+}
@@ -0,0 +1,637 @@
+package com.craftinginterpreters.lox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Compiles an Expr into a hidden class implementing Compiled. Subtrees that are numbers for sure
+ * become straight-line double arithmetic, ?:, commas, ! and == become branches and calls, and
+ * anything that might fail is handed back to the Interpreter, which reports the error as usual.
+ *
+ * The class file is written by hand, as version 49 so the verifier needs no stack map frames.
+ * Big trees are split into helper methods that stay under HotSpot's 8000 byte limit for
+ * methods it is willing to compile.
+ */
+final class JitCompiler {
+    /* What the generated class implements. */
+    interface Compiled {
+        Object evaluate();
+    }
+
+    /* Thrown when a tree doesn't fit the class file format. The caller keeps interpreting. Never serialized. */
+    @SuppressWarnings("serial")
+    static final class TooLarge extends RuntimeException {
+        TooLarge(String message) {
+            super(message, null, false, false);
+        }
+    }
+
+    /*
+     * Most nodes a method emits itself. Bigger subtrees get cut off into methods of their own,
+     * which keeps every method small enough, and a long chain only as many calls deep as it has methods.
+     */
+    private static final int SPLIT_NODES = 400;
+
+    private static final String CLASS_NAME = "com/craftinginterpreters/lox/JitExpr";
+    private static final String INTERPRETER = "com/craftinginterpreters/lox/Interpreter";
+    private static final String EXPR = "com/craftinginterpreters/lox/Expr";
+
+    /* What a subtree is known to produce without failing. ANY: unknown, or it might fail. */
+    private static final int ANY = 0;
+    private static final int NUMBER = 1;
+    private static final int STRING = 2;
+    private static final int BOOLEAN = 3;
+    private static final int NIL = 4;
+
+    private final ConstantPool pool = new ConstantPool();
+    private final Map<Expr, int[]> info = new IdentityHashMap<>();
+    /* The nodes handed back to the Interpreter, by their index in the generated class's array. */
+    private final List<Expr> fallbacks = new ArrayList<>();
+    private final ArrayDeque<Helper> pending = new ArrayDeque<>();
+    private final List<byte[]> methods = new ArrayList<>();
+    private int helpers = 0;
+
+    private record Helper(Expr expr, String name, boolean unboxed) {}
+
+    private JitCompiler() {}
+
+    static Compiled compile(Expr expr, Interpreter interpreter) {
+        JitCompiler compiler = new JitCompiler();
+        byte[] bytes = compiler.generate(expr);
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+            return (Compiled) lookup.findConstructor(lookup.lookupClass(),
+                    java.lang.invoke.MethodType.methodType(void.class, Interpreter.class, Expr[].class))
+                .invoke(interpreter, compiler.fallbacks.toArray(new Expr[0]));
+        } catch (RuntimeException | Error error) {
+            throw error;
+        } catch (Throwable error) {
+            throw new IllegalStateException("Couldn't load the compiled expression.", error);
+        }
+    }
+
+    private byte[] generate(Expr root) {
+        analyze(root);
+
+        /* The constructor stores the Interpreter and the fallback nodes. */
+        Code init = new Code();
+        init.op(0x2a, 1);
+        init.op(0xb7, -1);
+        init.u2(pool.method("java/lang/Object", "<init>", "()V"));
+        init.op(0x2a, 1);
+        init.op(0x2b, 1);
+        init.op(0xb5, -2);
+        init.u2(pool.field(CLASS_NAME, "interpreter", "L" + INTERPRETER + ";"));
+        init.op(0x2a, 1);
+        init.op(0x2c, 1);
+        init.op(0xb5, -2);
+        init.u2(pool.field(CLASS_NAME, "nodes", "[L" + EXPR + ";"));
+        init.op(0xb1, 0);
+        method(0x0001, "<init>", "(L" + INTERPRETER + ";[L" + EXPR + ";)V", init, 3);
+
+        Code evaluate = new Code();
+        object(evaluate, root, root);
+        evaluate.op(0xb0, -1);
+        method(0x0001, "evaluate", "()Ljava/lang/Object;", evaluate, 1);
+
+        while (!pending.isEmpty()) {
+            Helper helper = pending.poll();
+            Code code = new Code();
+                if (helper.unboxed) {
+                number(code, helper.expr, helper.expr);
+                code.op(0xaf, -2);
+                method(0x0012, helper.name, "()D", code, 1);
+            } else {
+                object(code, helper.expr, helper.expr);
+                code.op(0xb0, -1);
+                method(0x0012, helper.name, "()Ljava/lang/Object;", code, 1);
+            }
+        }
+
+        return write();
+    }
+
+    /* Static type of every node and where methods get split, bottom up, without recursing. */
+    private void analyze(Expr root) {
+        ExprWalker.walk(root, new ExprWalker.Listener() {
+            @Override
+            public void enter(Expr expr) {}
+
+            @Override
+            public void exit(Expr expr) {
+                info.put(expr, new int[] {type(expr), weight(expr), 0});
+            }
+        });
+    }
+
+    /*
+     * How many nodes expr emits into its method. While that's over SPLIT_NODES, the heaviest child
+     * gets cut off into a method of its own and counts as one, the call.
+     */
+    private int weight(Expr expr) {
+        Expr[] children = children(expr);
+        /* A ?: also emits its ? node, which is never split from it. */
+        int weight = children.length == 3 ? 2 : 1;
+        for (Expr child : children) weight += weightOf(child);
+        while (weight > SPLIT_NODES) {
+            Expr heaviest = null;
+            for (Expr child : children) {
+                if (isSplit(child)) continue;
+                if (heaviest == null || weightOf(child) > weightOf(heaviest)) heaviest = child;
+            }
+            weight -= weightOf(heaviest) - 1;
+            info.get(heaviest)[2] = 1;
+        }
+        return weight;
+    }
+
+    /* The nodes number() and object() go on to emit. */
+    private static Expr[] children(Expr expr) {
+        if (expr instanceof Expr.Grouping grouping) return new Expr[] {grouping.expression};
+        if (expr instanceof Expr.Unary unary) return new Expr[] {unary.right};
+        if (!(expr instanceof Expr.Binary binary)) return new Expr[0];
+        if (binary.operator.type == TokenType.COLON) {
+            Expr.Binary question = (Expr.Binary) binary.left;
+            return new Expr[] {question.left, question.right, binary.right};
+        }
+        return new Expr[] {binary.left, binary.right};
+    }
+
+    private int type(Expr expr) {
+        if (expr instanceof Expr.Literal literal) {
+            if (literal.value == null) return NIL;
+            if (literal.value instanceof Double) return NUMBER;
+            if (literal.value instanceof String) return STRING;
+            return BOOLEAN;
+        }
+        if (expr instanceof Expr.Grouping grouping) return typeOf(grouping.expression);
+        if (expr instanceof Expr.Unary unary) {
+            int right = typeOf(unary.right);
+            if (unary.operator.type == TokenType.BANG) return right == ANY ? ANY : BOOLEAN;
+            return right == NUMBER ? NUMBER : ANY;
+        }
+
+        Expr.Binary binary = (Expr.Binary) expr;
+        int left = typeOf(binary.left);
+        int right = typeOf(binary.right);
+        switch (binary.operator.type) {
+            case TokenType.COMMA:
+                return left == ANY ? ANY : right;
+            case TokenType.QUESTION:
+                return ANY;
+            case TokenType.COLON: {
+                Expr.Binary question = (Expr.Binary) binary.left;
+                int condition = typeOf(question.left);
+                int then = typeOf(question.right);
+                return condition != ANY && then == right ? right : ANY;
+            }
+            case TokenType.EQUAL_EQUAL:
+            case TokenType.BANG_EQUAL:
+                return left != ANY && right != ANY ? BOOLEAN : ANY;
+            case TokenType.PLUS:
+                if (left == NUMBER && right == NUMBER) return NUMBER;
+                return left == STRING && right == STRING ? STRING : ANY;
+            case TokenType.MINUS:
+            case TokenType.STAR:
+            case TokenType.SLASH:
+                return left == NUMBER && right == NUMBER ? NUMBER : ANY;
+            default:
+                return left == NUMBER && right == NUMBER ? BOOLEAN : ANY;
+        }
+    }
+
+    private int typeOf(Expr expr) {
+        return info.get(expr)[0];
+    }
+
+    private int weightOf(Expr expr) {
+        return info.get(expr)[1];
+    }
+
+    private boolean isSplit(Expr expr) {
+        return info.get(expr)[2] != 0;
+    }
+
+    /* Leaves a double on the stack. Only for subtrees typed NUMBER. */
+    private void number(Code code, Expr expr, Expr method) {
+        if (expr != method && isSplit(expr)) {
+            call(code, expr, true);
+            return;
+        }
+
+        if (expr instanceof Expr.Literal literal) {
+            code.op(0x14, 2);
+            code.u2(pool.number((Double) literal.value));
+        } else if (expr instanceof Expr.Grouping grouping) {
+            number(code, grouping.expression, method);
+        } else if (expr instanceof Expr.Unary unary) {
+            number(code, unary.right, method);
+            code.op(0x77, 0);
+        } else {
+            Expr.Binary binary = (Expr.Binary) expr;
+            switch (binary.operator.type) {
+                case TokenType.COMMA:
+                    /* The left side can't fail, and nothing else can tell it ran. */
+                    number(code, binary.right, method);
+                    return;
+                case TokenType.COLON: {
+                    Expr.Binary question = (Expr.Binary) binary.left;
+                    truthy(code, question.left, method);
+                    int otherwise = code.jump(0x99, -1);
+                    number(code, question.right, method);
+                    int end = code.jump(0xa7, 0);
+                    code.patch(otherwise);
+                    code.adjust(-2);
+                    number(code, binary.right, method);
+                    code.patch(end);
+                    return;
+                }
+            }
+            number(code, binary.left, method);
+            number(code, binary.right, method);
+            switch (binary.operator.type) {
+                case TokenType.PLUS: code.op(0x63, -2); break;
+                case TokenType.MINUS: code.op(0x67, -2); break;
+                case TokenType.STAR: code.op(0x6b, -2); break;
+                default: code.op(0x6f, -2); break;
+            }
+        }
+    }
+
+    /* Leaves the value as an Object on the stack, the same one the Interpreter would produce. */
+    private void object(Code code, Expr expr, Expr method) {
+        if (typeOf(expr) == NUMBER) {
+            number(code, expr, method);
+            code.op(0xb8, -1);
+            code.u2(pool.method("java/lang/Double", "valueOf", "(D)Ljava/lang/Double;"));
+            return;
+        }
+        if (expr != method && isSplit(expr)) {
+            call(code, expr, false);
+            return;
+        }
+
+        if (expr instanceof Expr.Literal literal) {
+            if (literal.value == null) {
+                code.op(0x01, 1);
+            } else if (literal.value instanceof String string) {
+                code.op(0x13, 1);
+                code.u2(pool.string(string));
+            } else {
+                code.op(0xb2, 1);
+                code.u2(pool.field("java/lang/Boolean", (Boolean) literal.value ? "TRUE" : "FALSE",
+                        "Ljava/lang/Boolean;"));
+            }
+            return;
+        }
+        if (expr instanceof Expr.Grouping grouping) {
+            object(code, grouping.expression, method);
+            return;
+        }
+        if (expr instanceof Expr.Unary unary) {
+            if (unary.operator.type != TokenType.BANG) {
+                fallback(code, expr);
+                return;
+            }
+            truthy(code, unary.right, method);
+            code.op(0x04, 1);
+            code.op(0x82, -1);
+            box(code);
+            return;
+        }
+
+        Expr.Binary binary = (Expr.Binary) expr;
+        int left = typeOf(binary.left);
+        int right = typeOf(binary.right);
+        switch (binary.operator.type) {
+            case TokenType.COMMA:
+                if (left != ANY) {
+                    object(code, binary.right, method);
+                    return;
+                }
+                object(code, binary.left, method);
+                code.op(0x57, -1);
+                object(code, binary.right, method);
+                return;
+            case TokenType.COLON: {
+                Expr.Binary question = (Expr.Binary) binary.left;
+                truthy(code, question.left, method);
+                int otherwise = code.jump(0x99, -1);
+                object(code, question.right, method);
+                int end = code.jump(0xa7, 0);
+                code.patch(otherwise);
+                code.adjust(-1);
+                object(code, binary.right, method);
+                code.patch(end);
+                return;
+            }
+            case TokenType.EQUAL_EQUAL:
+            case TokenType.BANG_EQUAL:
+                object(code, binary.left, method);
+                object(code, binary.right, method);
+                code.op(0xb8, -1);
+                code.u2(pool.method(INTERPRETER, "isEqual", "(Ljava/lang/Object;Ljava/lang/Object;)Z"));
+                if (binary.operator.type == TokenType.BANG_EQUAL) {
+                    code.op(0x04, 1);
+                    code.op(0x82, -1);
+                }
+                box(code);
+                return;
+            case TokenType.PLUS:
+                if (left == STRING && right == STRING) {
+                    object(code, binary.left, method);
+                    code.op(0xc0, 0);
+                    code.u2(pool.type("java/lang/String"));
+                    object(code, binary.right, method);
+                    code.op(0xc0, 0);
+                    code.u2(pool.type("java/lang/String"));
+                    code.op(0xb6, -1);
+                    code.u2(pool.method("java/lang/String", "concat", "(Ljava/lang/String;)Ljava/lang/String;"));
+                    return;
+                }
+                break;
+            case TokenType.GREATER:
+            case TokenType.GREATER_EQUAL:
+            case TokenType.LESS:
+            case TokenType.LESS_EQUAL:
+                if (left == NUMBER && right == NUMBER) {
+                    comparison(code, binary, method);
+                    return;
+                }
+                break;
+        }
+
+        fallback(code, expr);
+    }
+
+    /* Java's own translation of a < b and friends, so NaN compares false the same way. */
+    private void comparison(Code code, Expr.Binary binary, Expr method) {
+        number(code, binary.left, method);
+        number(code, binary.right, method);
+        int branch;
+        switch (binary.operator.type) {
+            case TokenType.GREATER: code.op(0x97, -3); branch = 0x9e; break;
+            case TokenType.GREATER_EQUAL: code.op(0x97, -3); branch = 0x9b; break;
+            case TokenType.LESS: code.op(0x98, -3); branch = 0x9c; break;
+            default: code.op(0x98, -3); branch = 0x9d; break;
+        }
+        int otherwise = code.jump(branch, -1);
+        code.op(0xb2, 1);
+        code.u2(pool.field("java/lang/Boolean", "TRUE", "Ljava/lang/Boolean;"));
+        int end = code.jump(0xa7, 0);
+        code.patch(otherwise);
+        code.adjust(-1);
+        code.op(0xb2, 1);
+        code.u2(pool.field("java/lang/Boolean", "FALSE", "Ljava/lang/Boolean;"));
+        code.patch(end);
+    }
+
+    /* Leaves Interpreter.isTruthy() of the value as an int. */
+    private void truthy(Code code, Expr expr, Expr method) {
+        object(code, expr, method);
+        code.op(0xb8, 0);
+        code.u2(pool.method(INTERPRETER, "isTruthy", "(Ljava/lang/Object;)Z"));
+    }
+
+    private void box(Code code) {
+        code.op(0xb8, 0);
+        code.u2(pool.method("java/lang/Boolean", "valueOf", "(Z)Ljava/lang/Boolean;"));
+    }
+
+    /* interpreter.evaluate(nodes[index]) */
+    private void fallback(Code code, Expr expr) {
+        fallbacks.add(expr);
+        code.op(0x2a, 1);
+        code.op(0xb4, 0);
+        code.u2(pool.field(CLASS_NAME, "interpreter", "L" + INTERPRETER + ";"));
+        code.op(0x2a, 1);
+        code.op(0xb4, 0);
+        code.u2(pool.field(CLASS_NAME, "nodes", "[L" + EXPR + ";"));
+        code.op(0x13, 1);
+        code.u2(pool.integer(fallbacks.size() - 1));
+        code.op(0x32, -1);
+        code.op(0xb6, -1);
+        code.u2(pool.method(INTERPRETER, "evaluate", "(L" + EXPR + ";)Ljava/lang/Object;"));
+    }
+
+    /* Private methods of a version 49 class are called with invokespecial. */
+    private void call(Code code, Expr expr, boolean unboxed) {
+        String name = "part" + helpers++;
+        String descriptor = unboxed ? "()D" : "()Ljava/lang/Object;";
+        pending.add(new Helper(expr, name, unboxed));
+        code.op(0x2a, 1);
+        code.op(0xb7, unboxed ? 1 : 0);
+        code.u2(pool.method(CLASS_NAME, name, descriptor));
+    }
+
+    private void method(int access, String name, String descriptor, Code code, int locals) {
+        if (code.length() > 0xFFFF) throw new TooLarge("Method " + name + " is too large.");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeShort(access);
+            out.writeShort(pool.utf8(name));
+            out.writeShort(pool.utf8(descriptor));
+            out.writeShort(1);
+            out.writeShort(pool.utf8("Code"));
+            out.writeInt(12 + code.length());
+            out.writeShort(code.maxStack);
+            out.writeShort(locals);
+            out.writeInt(code.length());
+            code.writeTo(out);
+            out.writeShort(0);
+            out.writeShort(0);
+        } catch (IOException error) {
+            throw new UncheckedIOException(error);
+        }
+        methods.add(bytes.toByteArray());
+    }
+
+    private byte[] write() {
+        int thisClass = pool.type(CLASS_NAME);
+        int superClass = pool.type("java/lang/Object");
+        int compiled = pool.type("com/craftinginterpreters/lox/JitCompiler$Compiled");
+        int interpreterName = pool.utf8("interpreter");
+        int interpreterType = pool.utf8("L" + INTERPRETER + ";");
+        int nodesName = pool.utf8("nodes");
+        int nodesType = pool.utf8("[L" + EXPR + ";");
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(49);
+            pool.writeTo(out);
+            /* final, super */
+            out.writeShort(0x0030);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(1);
+            out.writeShort(compiled);
+
+            /* private final fields */
+            out.writeShort(2);
+            out.writeShort(0x0012);
+            out.writeShort(interpreterName);
+            out.writeShort(interpreterType);
+            out.writeShort(0);
+            out.writeShort(0x0012);
+            out.writeShort(nodesName);
+            out.writeShort(nodesType);
+            out.writeShort(0);
+
+            out.writeShort(methods.size());
+            for (byte[] method : methods) out.write(method);
+            out.writeShort(0);
+        } catch (IOException error) {
+            throw new UncheckedIOException(error);
+        }
+        return bytes.toByteArray();
+    }
+
+    /* A method body, tracking the operand stack depth as it goes. */
+    private static final class Code {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        /* Where each branch offset goes and its value, filled in on the way out. */
+        private final List<int[]> patches = new ArrayList<>();
+        private int depth = 0;
+        int maxStack = 0;
+
+        /* delta is what the instruction does to the stack, in slots. A double takes two. */
+        void op(int opcode, int delta) {
+            bytes.write(opcode);
+            adjust(delta);
+        }
+
+        void adjust(int delta) {
+            depth += delta;
+            if (depth > maxStack) maxStack = depth;
+        }
+
+        void u2(int value) {
+            bytes.write(value >>> 8);
+            bytes.write(value);
+        }
+
+        /* Writes a branch with a placeholder offset and returns where the instruction starts. */
+        int jump(int opcode, int delta) {
+            int at = length();
+            op(opcode, delta);
+            u2(0);
+            return at;
+        }
+
+        /* Points the branch at `at` to here. Offsets are relative to the branch instruction. */
+        void patch(int at) {
+            int offset = length() - at;
+            if (offset > Short.MAX_VALUE) throw new TooLarge("Branch is too long.");
+            patches.add(new int[] {at + 1, offset});
+        }
+
+        int length() {
+            return bytes.size();
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            byte[] code = bytes.toByteArray();
+            for (int[] patch : patches) {
+                code[patch[0]] = (byte) (patch[1] >>> 8);
+                code[patch[0] + 1] = (byte) patch[1];
+            }
+            out.write(code);
+        }
+    }
+
+    /* Each distinct constant once. Doubles take two slots, as the format says. */
+    private static final class ConstantPool {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+        private final Map<String, Integer> entries = new HashMap<>();
+        private int next = 1;
+
+        int utf8(String value) {
+            return entry("U" + value, 1, () -> out.writeUTF(value), 1);
+        }
+
+        int type(String name) {
+            int utf8 = utf8(name);
+            return entry("C" + name, 7, () -> out.writeShort(utf8), 1);
+        }
+
+        int string(String value) {
+            int utf8 = utf8(value);
+            return entry("S" + value, 8, () -> out.writeShort(utf8), 1);
+        }
+
+        int integer(int value) {
+            return entry("I" + value, 3, () -> out.writeInt(value), 1);
+        }
+
+        /* Keyed on the bits, so 0.0 and -0.0 stay apart. */
+        int number(double value) {
+            long bits = Double.doubleToRawLongBits(value);
+            return entry("D" + bits, 6, () -> out.writeLong(bits), 2);
+        }
+
+        int field(String owner, String name, String descriptor) {
+            int type = type(owner);
+            int nameAndType = nameAndType(name, descriptor);
+            return entry("F" + owner + "." + name + ":" + descriptor, 9, () -> {
+                out.writeShort(type);
+                out.writeShort(nameAndType);
+            }, 1);
+        }
+
+        int method(String owner, String name, String descriptor) {
+            int type = type(owner);
+            int nameAndType = nameAndType(name, descriptor);
+            return entry("M" + owner + "." + name + descriptor, 10, () -> {
+                out.writeShort(type);
+                out.writeShort(nameAndType);
+            }, 1);
+        }
+
+        private int nameAndType(String name, String descriptor) {
+            int nameIndex = utf8(name);
+            int descriptorIndex = utf8(descriptor);
+            return entry("N" + name + ":" + descriptor, 12, () -> {
+                out.writeShort(nameIndex);
+                out.writeShort(descriptorIndex);
+            }, 1);
+        }
+
+        private interface Body {
+            void write() throws IOException;
+        }
+
+        private int entry(String key, int tag, Body body, int slots) {
+            Integer index = entries.get(key);
+            if (index != null) return index;
+            if (next + slots > 0xFFFF) throw new TooLarge("Too many constants.");
+            try {
+                out.writeByte(tag);
+                body.write();
+            } catch (IOException error) {
+                throw new UncheckedIOException(error);
+            }
+            entries.put(key, next);
+            next += slots;
+            return next - slots;
+        }
+
+        void writeTo(DataOutputStream target) throws IOException {
+            target.writeShort(next);
+            bytes.writeTo(target);
+        }
+    }
+}
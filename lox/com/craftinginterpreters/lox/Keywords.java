@@ -0,0 +1,52 @@
+package com.craftinginterpreters.lox;
+
+/* Tells keywords apart from identifiers straight from the source characters, like clox does. */
+final class Keywords {
+    private Keywords() {}
+
+    static TokenType lookup(CharSource source, int start, int length) {
+        switch (source.charAt(start)) {
+            case 'a': return rest(source, start, length, 1, "nd", TokenType.AND);
+            case 'c': return rest(source, start, length, 1, "lass", TokenType.CLASS);
+            case 'e': return rest(source, start, length, 1, "lse", TokenType.ELSE);
+            case 'f':
+                if (length > 1) {
+                    switch (source.charAt(start + 1)) {
+                        case 'a': return rest(source, start, length, 2, "lse", TokenType.FALSE);
+                        case 'o': return rest(source, start, length, 2, "r", TokenType.FOR);
+                        case 'u': return rest(source, start, length, 2, "n", TokenType.FUN);
+                    }
+                }
+                break;
+            case 'i': return rest(source, start, length, 1, "f", TokenType.IF);
+            case 'n': return rest(source, start, length, 1, "il", TokenType.NIL);
+            case 'o': return rest(source, start, length, 1, "r", TokenType.OR);
+            case 'p': return rest(source, start, length, 1, "rint", TokenType.PRINT);
+            case 'r': return rest(source, start, length, 1, "eturn", TokenType.RETURN);
+            case 's': return rest(source, start, length, 1, "uper", TokenType.SUPER);
+            case 't':
+                if (length > 1) {
+                    switch (source.charAt(start + 1)) {
+                        case 'h': return rest(source, start, length, 2, "is", TokenType.THIS);
+                        case 'r': return rest(source, start, length, 2, "ue", TokenType.TRUE);
+                    }
+                }
+                break;
+            case 'v': return rest(source, start, length, 1, "ar", TokenType.VAR);
+            case 'w': return rest(source, start, length, 1, "hile", TokenType.WHILE);
+        }
+
+        return TokenType.IDENTIFIER;
+    }
+
+    /* Once the prefix picked a candidate, the rest of the lexeme has to match exactly. */
+    private static TokenType rest(CharSource source, int start, int length, int offset, String rest, TokenType type) {
+        if (length != offset + rest.length()) return TokenType.IDENTIFIER;
+
+        for (int i = 0; i < rest.length(); i++) {
+            if (source.charAt(start + offset + i) != rest.charAt(i)) return TokenType.IDENTIFIER;
+        }
+
+        return type;
+    }
+}
@@ -0,0 +1,83 @@
+package com.craftinginterpreters.lox;
+
+/*
+ * One String per distinct lexeme for a whole compilation, so later phases can compare names
+ * with ==. Open addressing keyed straight on the source range, so a hit copies nothing.
+ */
+final class LexemePool {
+    private String[] table = new String[256];
+    private int[] hashes = new int[256];
+    private int unique = 0;
+    private int total = 0;
+
+    /* Literals are mostly one-offs, so only names and operators are worth pooling. */
+    static boolean pooled(TokenType type) {
+        return type != TokenType.STRING && type != TokenType.NUMBER && type != TokenType.EOF;
+    }
+
+    String intern(CharSource source, int start, int end) {
+        int hash = hash(source, start, end);
+        int mask = table.length - 1;
+        int index = hash & mask;
+
+        /* Linear probing. The table is never more than half full, so there is always a hole. */
+        for (String lexeme = table[index]; lexeme != null; lexeme = table[index]) {
+            if (hashes[index] == hash && matches(lexeme, source, start, end)) return lexeme;
+            index = (index + 1) & mask;
+        }
+
+        String lexeme = source.substring(start, end);
+        table[index] = lexeme;
+        hashes[index] = hash;
+        unique++;
+        if (unique * 2 > table.length) grow();
+        return lexeme;
+    }
+
+    /* The Scanner counts each pooled token once, however often its lexeme is looked up later. */
+    void scanned() {
+        total++;
+    }
+
+    /* How many different lexemes we kept vs. how many pooled tokens were scanned. */
+    int unique() {
+        return unique;
+    }
+
+    int total() {
+        return total;
+    }
+
+    private static int hash(CharSource source, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + source.charAt(i);
+        }
+        /* Spread the high bits, since we only look at the low ones. */
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean matches(String lexeme, CharSource source, int start, int end) {
+        if (lexeme.length() != end - start) return false;
+        for (int i = 0; i < lexeme.length(); i++) {
+            if (lexeme.charAt(i) != source.charAt(start + i)) return false;
+        }
+        return true;
+    }
+
+    private void grow() {
+        String[] oldTable = table;
+        int[] oldHashes = hashes;
+        table = new String[oldTable.length * 2];
+        hashes = new int[oldHashes.length * 2];
+
+        int mask = table.length - 1;
+        for (int i = 0; i < oldTable.length; i++) {
+            if (oldTable[i] == null) continue;
+            int index = oldHashes[i] & mask;
+            while (table[index] != null) index = (index + 1) & mask;
+            table[index] = oldTable[i];
+            hashes[index] = oldHashes[i];
+        }
+    }
+}
@@ -3,34 +3,99 @@ package com.craftinginterpreters.lox;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.nio.charset.Charset;
-import java.nio.file.Files;
+import java.io.PrintStream;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
 
+/* The `jlox` command. Everything it does goes through a LoxEngine, it only prints the results. */
 public class Lox {
-    static boolean hadError = false;
-    public static void main(String[] args) throws IOException {
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Diagnostics.Level level = Diagnostics.Level.ERRORS;
+        boolean fold = false;
+        boolean printAst = false;
+        boolean bytecode = false;
+        boolean recover = false;
+        boolean batch = false;
+        boolean keyed = false;
+        int jobs = Runtime.getRuntime().availableProcessors();
+        Path cache = null;
+        List<String> scripts = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.equals("--batch")) {
+                batch = true;
+            } else if (arg.equals("--keyed")) {
+                keyed = true;
+            } else if (arg.startsWith("--jobs=")) {
+                try {
+                    jobs = Integer.parseInt(arg.substring("--jobs=".length()));
+                } catch (NumberFormatException error) {
+                    jobs = 0;
+                }
+            } else if (arg.equals("--trace")) {
+                level = Diagnostics.Level.TRACE;
+            } else if (arg.equals("--fold")) {
+                fold = true;
+            } else if (arg.equals("--ast")) {
+                printAst = true;
+            } else if (arg.equals("--vm")) {
+                bytecode = true;
+            } else if (arg.equals("--recover")) {
+                recover = true;
+            } else if (arg.equals("--cache")) {
+                /* Parsed trees are kept between runs here. */
+                cache = AstCache.defaultDirectory();
+            } else if (arg.startsWith("--cache=")) {
+                cache = Paths.get(arg.substring("--cache=".length()));
+            } else {
+                scripts.add(arg);
+            }
+        }
+
         /* This is how we use the `jlox` command. */
-        if (args.length > 1) {
-            System.out.println("Usage: jlox [script]");
+        if (jobs < 1 || (batch ? scripts.isEmpty() : scripts.size() > 1)) {
+            System.out.println("Usage: jlox [--trace] [--fold] [--ast] [--vm] [--recover] [--cache[=DIR]] [script]");
+            System.out.println("       jlox --batch [--jobs=N] [--keyed] [options] dir|glob|script...");
             System.exit(64);
-        } else if (args.length == 1) {
-            runFile(args[0]);
+        }
+
+        AstCache trees = null;
+        if (cache != null) {
+            try {
+                trees = AstCache.open(cache);
+            } catch (IOException error) {
+                System.err.println("Can't use the cache: " + error);
+                System.exit(74);
+            }
+        }
+
+        if (batch) {
+            /* Scripts run side by side, so they share one engine and its caches. */
+            LoxEngine engine = new LoxEngine(level, System.out, fold, bytecode, recover, null, trees);
+            int status = new Batch(engine, printAst, jobs, keyed).run(scripts, System.out, System.err);
+            if (status != 0) System.exit(status);
+        } else if (scripts.size() == 1) {
+            LoxEngine engine = new LoxEngine(level, System.out, fold, bytecode, recover, null, trees);
+            runFile(engine, printAst, scripts.get(0));
         } else {
-            runPrompt();
+            /* Shared by every line typed at the prompt, so repeating one skips the Scanner and Parser. */
+            ParseCache parses = new ParseCache(1024, 16 << 20);
+            runPrompt(new LoxEngine(level, System.out, fold, bytecode, recover, parses, null), printAst);
         }
     }
 
     /* Run the FILE. */
-    private static void runFile(String path) throws IOException {
-        byte[] bytes = Files.readAllBytes(Paths.get(path));
-        run(new String(bytes, Charset.defaultCharset()));
-        if (hadError) System.exit(65);
+    private static void runFile(LoxEngine engine, boolean printAst, String path) throws IOException {
+        LoxEngine.Parse parse = engine.parse(Paths.get(path));
+        LoxEngine.Result result = printAst ? engine.print(parse) : engine.evaluate(parse);
+        report(result);
+        if (result.hadError()) System.exit(65);
+        if (result.hadRuntimeError()) System.exit(70);
     }
 
     /* Run the REPL. */
-    private static void runPrompt() throws IOException {
+    private static void runPrompt(LoxEngine engine, boolean printAst) throws IOException {
         InputStreamReader input = new InputStreamReader(System.in);
         BufferedReader reader = new BufferedReader(input);
 
@@ -39,48 +104,26 @@ public class Lox {
             System.out.print("> ");
             String line = reader.readLine();
             if (line == null) break;
-            run(line);
-            hadError = false;
+            report(printAst ? engine.print(line) : engine.evaluate(line));
         }
     }
 
-    /* Error handling. */
-    static void error (int line, String message) {
-        report(line, "", message);
-    }
-
-    private static void report (int line, String where, String message) {
-        System.err.println(
-            "[line " + line + "] Error" + where + ": " + message
-        );
-        hadError = true;
+    private static void report(LoxEngine.Result result) {
+        report(result, System.out, System.err);
     }
 
-    /* Parse error handling. */
-    static void error (Token token, String message) {
-        if (token.type == TokenType.EOF) {
-            report(token.line, " at end", message);
-        } else {
-            report(token.line, " at '" + token.lexeme + "'", message);
+    /* Errors go to err, the value to out. */
+    static void report(LoxEngine.Result result, PrintStream out, PrintStream err) {
+        for (Diagnostic error : result.errors()) {
+            err.println(error);
         }
-    }
-
-    /* Our ACTUAL entrypoint. */
-    private static void run (String source) {
-        Scanner scanner = new Scanner(source);
-        List<Token> tokens = scanner.scanTokens();
-
-        /* Just print the tokens for now.
-        for (Token token : tokens) {
-            System.out.println(token);
-        } */
-
-        Parser parser = new Parser(tokens);
-        Expr expression = parser.parse();
-
-        /* Stop if there's a syntax error. */
-        if (hadError) return;
-        System.out.println("Printing...");
-        System.out.println(new AstPrinter().print(expression));
+        if (result.hadError()) return;
+        if (result.folding() != null) err.println(result.folding());
+        if (result.hadRuntimeError()) {
+            RuntimeError error = result.runtimeError();
+            err.println(error.getMessage() + "\n[line " + error.line + "]");
+            return;
+        }
+        out.println(result.output());
     }
 }
@@ -0,0 +1,199 @@
+package com.craftinginterpreters.lox;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/*
+ * Scans, parses, prints and evaluates Lox. Every call gets its own Scanner, Parser, Interpreter
+ * and diagnostics, and hands back everything it found instead of printing it. So one engine can
+ * serve any number of threads at once. The only thing calls share is the caches, which are
+ * safe to share.
+ */
+final class LoxEngine {
+    record Scan(List<Token> tokens, List<Diagnostic> errors) {}
+
+    /* Syntax errors come in source order. expr is null when the Parser gave up. */
+    record Parse(Expr expr, List<Diagnostic> errors) {
+        boolean hadError() {
+            return !errors.isEmpty();
+        }
+    }
+
+    /* A syntax error means nothing ran. A runtime error means value is null. */
+    record Result(Object value, List<Diagnostic> errors, RuntimeError runtimeError, Folding folding) {
+        boolean hadError() {
+            return !errors.isEmpty();
+        }
+
+        boolean hadRuntimeError() {
+            return runtimeError != null;
+        }
+
+        /* What the REPL prints: the value as Lox shows it. */
+        String output() {
+            return Interpreter.stringify(value);
+        }
+    }
+
+    record Folding(int eliminated, int seen) {
+        @Override
+        public String toString() {
+            return "Folded away " + eliminated + " of " + seen + " nodes.";
+        }
+    }
+
+    private final Diagnostics.Level level;
+    private final PrintStream trace;
+    private final boolean fold;
+    private final boolean bytecode;
+    /* Parse ';'-separated statements and report every syntax error, not just the first. */
+    private final boolean recover;
+    /* Either may be null, for no caching. */
+    private final ParseCache parses;
+    private final AstCache trees;
+
+    LoxEngine() {
+        this(Diagnostics.Level.ERRORS, null, false, false, false, null, null);
+    }
+
+    LoxEngine(Diagnostics.Level level, PrintStream trace, boolean fold, boolean bytecode, boolean recover,
+              ParseCache parses, AstCache trees) {
+        this.level = level;
+        this.trace = trace;
+        this.fold = fold;
+        this.bytecode = bytecode;
+        this.recover = recover;
+        /* The same source parses to a different tree in recovery mode, so it keeps out of the caches. */
+        this.parses = recover ? null : parses;
+        this.trees = recover ? null : trees;
+    }
+
+    /* The same engine and caches, tracing to somewhere else. */
+    LoxEngine withTrace(PrintStream trace) {
+        return new LoxEngine(level, trace, fold, bytecode, recover, parses, trees);
+    }
+
+    Scan scan(String source) {
+        DiagnosticList diagnostics = diagnostics();
+        List<Token> tokens = new Scanner(source, diagnostics).scanTokens();
+        return new Scan(List.copyOf(tokens), List.copyOf(diagnostics.errors()));
+    }
+
+    Parse parse(String source) {
+        DiagnosticList diagnostics = diagnostics();
+        if (parses != null) {
+            Expr expr = parses.get(source);
+            if (expr != null) {
+                diagnostics.trace("Parse cache: " + parses + ".");
+                return new Parse(expr, List.of());
+            }
+        }
+
+        /* The whole source is in memory, so lexemes can stay in it until needed. */
+        TokenBuffer tokens = new Scanner(source, diagnostics).scanBuffer();
+        Expr expr = parse(new Parser(tokens.cursor(), diagnostics), diagnostics);
+        traceLexemes(tokens.lexemes(), diagnostics);
+        if (parses != null && !diagnostics.hasErrors()) parses.put(source, expr);
+        return new Parse(expr, List.copyOf(diagnostics.errors()));
+    }
+
+    /* Streams the file through the Scanner, unless there's an AstCache, which hashes it whole. */
+    Parse parse(Path path) throws IOException {
+        DiagnosticList diagnostics = diagnostics();
+        if (trees == null) {
+            try (Reader reader = new InputStreamReader(Files.newInputStream(path), Charset.defaultCharset())) {
+                Scanner scanner = new Scanner(reader, diagnostics);
+                TokenSource tokens = new TokenSource(scanner);
+                Expr expr = parse(new Parser(tokens, diagnostics), diagnostics);
+                tokens.drain();
+                traceLexemes(scanner.lexemes(), diagnostics);
+                return new Parse(expr, List.copyOf(diagnostics.errors()));
+            }
+        }
+
+        byte[] source = Files.readAllBytes(path);
+        byte[] key = AstCache.key(source);
+        /* A hit skips the Scanner and Parser altogether. */
+        Expr expr = trees.load(key);
+        if (expr != null) {
+            diagnostics.trace("Loaded the tree from the cache.");
+            return new Parse(expr, List.of());
+        }
+
+        TokenBuffer tokens = new Scanner(new String(source, Charset.defaultCharset()), diagnostics).scanBuffer();
+        expr = parse(new Parser(tokens.cursor(), diagnostics), diagnostics);
+        traceLexemes(tokens.lexemes(), diagnostics);
+        /* Only a clean parse is worth keeping. Errors get reported again next time. */
+        if (!diagnostics.hasErrors() && !trees.store(key, expr)) {
+            diagnostics.trace("Couldn't store the tree in the cache.");
+        }
+        return new Parse(expr, List.copyOf(diagnostics.errors()));
+    }
+
+    /* The tree as AstPrinter shows it, as the value. */
+    Result print(Parse parse) {
+        return run(parse, true);
+    }
+
+    Result print(String source) {
+        return print(parse(source));
+    }
+
+    Result evaluate(Parse parse) {
+        return run(parse, false);
+    }
+
+    Result evaluate(String source) {
+        return evaluate(parse(source));
+    }
+
+    private Result run(Parse parse, boolean print) {
+        if (parse.hadError()) return new Result(null, parse.errors, null, null);
+        Expr expr = parse.expr;
+        Folding folding = null;
+        if (fold) {
+            ConstantFolder folder = new ConstantFolder();
+            expr = folder.fold(expr);
+            folding = new Folding(folder.eliminated(), folder.seen());
+        }
+
+        DiagnosticList diagnostics = diagnostics();
+        if (print) {
+            diagnostics.trace("Printing...");
+            return new Result(new AstPrinter().printIterative(expr), parse.errors, null, folding);
+        }
+        try {
+            Object value;
+            if (bytecode) {
+                diagnostics.trace("Compiling...");
+                value = new VM().run(Compiler.compile(expr));
+            } else {
+                diagnostics.trace("Interpreting...");
+                value = new Interpreter().evaluate(expr);
+            }
+            return new Result(value, parse.errors, null, folding);
+        } catch (RuntimeError error) {
+            return new Result(null, parse.errors, error, folding);
+        }
+    }
+
+    /* A trace walks the recursive descent. Otherwise nesting is only limited by memory. */
+    private Expr parse(Parser parser, DiagnosticList diagnostics) {
+        if (recover) return parser.parseProgram();
+        return diagnostics.tracing() ? parser.parse() : parser.parseIterative();
+    }
+
+    private static void traceLexemes(LexemePool lexemes, DiagnosticList diagnostics) {
+        diagnostics.trace("Lexemes: " + lexemes.unique() + " unique of " + lexemes.total() + ".");
+    }
+
+    private DiagnosticList diagnostics() {
+        return new DiagnosticList(level, trace);
+    }
+}
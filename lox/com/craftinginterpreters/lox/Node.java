@@ -0,0 +1,609 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/*
+ * An executable tree built from an Expr. Arithmetic, comparison and unary minus nodes start out
+ * uninitialized. The first time they run they look at their operands and replace themselves in
+ * their parent with a node specialized for those types. Every specialization guards its types,
+ * and a guard that fails rewrites the node to the generic form for good.
+ *
+ * Numbers flow between numeric nodes as doubles through executeNumber(). A value that isn't a
+ * number comes back up as an UnexpectedResult instead. Not safe to share between threads, like
+ * the Interpreter.
+ *
+ * Executing recurses, so like the Interpreter, a tree only gets nodes Interpreter.MAX_DEPTH deep.
+ * Below that each subtree runs on the Interpreter's stack on the heap.
+ */
+abstract class Node {
+    /* What gets counted in Root. */
+    static final int NUMBER_ARITHMETIC = 0;
+    static final int NUMBER_COMPARISON = 1;
+    static final int NUMBER_NEGATE = 2;
+    static final int STRING_CONCAT = 3;
+    static final int GENERIC = 4;
+    private static final int KINDS = 5;
+
+    Node parent;
+
+    abstract Object execute();
+
+    double executeNumber() {
+        return expectNumber(execute());
+    }
+
+    /* Nodes with children swap `child` for `replacement` when it rewrites itself. */
+    void replaceChild(Node child, Node replacement) {
+        throw new IllegalStateException(getClass().getSimpleName() + " has no children.");
+    }
+
+    final <T extends Node> T replace(T replacement) {
+        replacement.parent = parent;
+        parent.replaceChild(this, replacement);
+        return replacement;
+    }
+
+    final <T extends Node> T adopt(T child) {
+        child.parent = this;
+        return child;
+    }
+
+    static double expectNumber(Object value) {
+        if (value instanceof Double number) return number;
+        throw new UnexpectedResult(value);
+    }
+
+    /* A numeric node got something else. Rare, so it doesn't bother with a stack trace. Never serialized. */
+    @SuppressWarnings("serial")
+    static final class UnexpectedResult extends RuntimeException {
+        final Object value;
+
+        UnexpectedResult(Object value) {
+            super(null, null, false, false);
+            this.value = value;
+        }
+    }
+
+    /* Builds the nodes bottom up, so deep trees don't overflow the stack while building. */
+    static Root build(Expr expr) {
+        Root root = new Root();
+        Set<Expr> deep = deep(expr);
+        Node body = ExprWalker.fold(expr, new ExprWalker.Fold<Node>() {
+            @Override
+            public Node literal(Expr.Literal expr) {
+                if (expr.value instanceof Double number) return new NumberLiteral(number);
+                return new Constant(expr.value);
+            }
+
+            @Override
+            public Node grouping(Expr.Grouping expr, Node inner) {
+                if (deep.contains(expr)) return new Deep(root, expr);
+                return inner;
+            }
+
+            @Override
+            public Node unary(Expr.Unary expr, Node right) {
+                if (deep.contains(expr)) return new Deep(root, expr);
+                if (expr.operator.type == TokenType.BANG) return new Not(right);
+                return new UninitializedNegate(root, expr.operator, right);
+            }
+
+            @Override
+            public Node binary(Expr.Binary expr, Node left, Node right) {
+                if (deep.contains(expr)) return new Deep(root, expr);
+                switch (expr.operator.type) {
+                    case TokenType.COMMA:
+                        return new Sequence(left, right);
+                    case TokenType.QUESTION:
+                        return new Question(expr.operator, left, right);
+                    case TokenType.COLON:
+                        if (left instanceof Question question) {
+                            return new Conditional(question.condition, question.then, right);
+                        }
+                        return new Question(expr.operator, left, right);
+                    case TokenType.EQUAL_EQUAL:
+                    case TokenType.BANG_EQUAL:
+                        return new Equality(expr.operator.type == TokenType.BANG_EQUAL, left, right);
+                    default:
+                        return new UninitializedBinary(root, expr.operator, left, right);
+                }
+            }
+        });
+        return root.wrap(body);
+    }
+
+    /* The nodes MAX_DEPTH down, whose subtrees run as a Deep node each. Leaves can stay nodes. */
+    private static Set<Expr> deep(Expr root) {
+        Set<Expr> deep = Collections.newSetFromMap(new IdentityHashMap<>());
+        ExprWalker.walk(root, new ExprWalker.Listener() {
+            private int depth = 0;
+
+            @Override
+            public void enter(Expr expr) {
+                if (++depth == Interpreter.MAX_DEPTH) deep.add(expr);
+            }
+
+            @Override
+            public void exit(Expr expr) {
+                depth--;
+            }
+        });
+        return deep;
+    }
+
+    /* The top of the tree. Keeps the counters for everything under it. */
+    static final class Root extends Node {
+        private Node body;
+        private final long[] hits = new long[KINDS];
+        private int specializations = 0;
+        private int deoptimizations = 0;
+        /* Runs the Deep subtrees. Only made when there are some. */
+        private Interpreter interpreter;
+
+        /* Puts body under this root. build() does it once the nodes are built. */
+        Root wrap(Node body) {
+            this.body = adopt(body);
+            return this;
+        }
+
+        @Override
+        Object execute() {
+            return body.execute();
+        }
+
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            body = replacement;
+        }
+
+        /* How many times nodes of a kind ran, NUMBER_ARITHMETIC through GENERIC. */
+        long hits(int kind) {
+            return hits[kind];
+        }
+
+        /* The share of runs that took a specialized path instead of the generic one. */
+        double hitRate() {
+            long total = 0;
+            for (long count : hits) total += count;
+            return total == 0 ? 0 : (double) (total - hits[GENERIC]) / total;
+        }
+
+        int specializations() {
+            return specializations;
+        }
+
+        int deoptimizations() {
+            return deoptimizations;
+        }
+    }
+
+    /* A subtree MAX_DEPTH down. It's never specialized, and its operators aren't counted in Root. */
+    static final class Deep extends Node {
+        private final Root root;
+        private final Expr expr;
+
+        Deep(Root root, Expr expr) {
+            this.root = root;
+            this.expr = expr;
+        }
+
+        @Override
+        Object execute() {
+            if (root.interpreter == null) root.interpreter = new Interpreter();
+            return root.interpreter.evaluateDeep(expr);
+        }
+    }
+
+    static final class NumberLiteral extends Node {
+        private final double value;
+        private final Double boxed;
+
+        NumberLiteral(double value) {
+            this.value = value;
+            this.boxed = value;
+        }
+
+        @Override
+        Object execute() {
+            return boxed;
+        }
+
+        @Override
+        double executeNumber() {
+            return value;
+        }
+    }
+
+    /* Strings, booleans and nil. */
+    static final class Constant extends Node {
+        private final Object value;
+
+        Constant(Object value) {
+            this.value = value;
+        }
+
+        @Override
+        Object execute() {
+            return value;
+        }
+    }
+
+    static final class Not extends Node {
+        private Node right;
+
+        Not(Node right) {
+            this.right = adopt(right);
+        }
+
+        @Override
+        Object execute() {
+            return !Interpreter.isTruthy(right.execute());
+        }
+
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            right = replacement;
+        }
+    }
+
+    static final class Sequence extends Node {
+        private Node left;
+        private Node right;
+
+        Sequence(Node left, Node right) {
+            this.left = adopt(left);
+            this.right = adopt(right);
+        }
+
+        @Override
+        Object execute() {
+            left.execute();
+            return right.execute();
+        }
+
+        @Override
+        double executeNumber() {
+            left.execute();
+            return right.executeNumber();
+        }
+
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            if (left == child) {
+                left = replacement;
+            } else {
+                right = replacement;
+            }
+        }
+    }
+
+    /* Only there until the : above it is built. The Parser never leaves a ? or : on its own. */
+    private static final class Question extends Node {
+        final Token operator;
+        final Node condition;
+        final Node then;
+
+        Question(Token operator, Node condition, Node then) {
+            this.operator = operator;
+            this.condition = condition;
+            this.then = then;
+        }
+
+        @Override
+        Object execute() {
+            throw new RuntimeError(operator, "Unexpected operator.");
+        }
+    }
+
+    static final class Conditional extends Node {
+        private Node condition;
+        private Node then;
+        private Node otherwise;
+
+        Conditional(Node condition, Node then, Node otherwise) {
+            this.condition = adopt(condition);
+            this.then = adopt(then);
+            this.otherwise = adopt(otherwise);
+        }
+
+        @Override
+        Object execute() {
+            return Interpreter.isTruthy(condition.execute()) ? then.execute() : otherwise.execute();
+        }
+
+        @Override
+        double executeNumber() {
+            return Interpreter.isTruthy(condition.execute()) ? then.executeNumber() : otherwise.executeNumber();
+        }
+
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            if (condition == child) {
+                condition = replacement;
+            } else if (then == child) {
+                then = replacement;
+            } else {
+                otherwise = replacement;
+            }
+        }
+    }
+
+    static final class Equality extends Node {
+        private final boolean negated;
+        private Node left;
+        private Node right;
+
+        Equality(boolean negated, Node left, Node right) {
+            this.negated = negated;
+            this.left = adopt(left);
+            this.right = adopt(right);
+        }
+
+        @Override
+        Object execute() {
+            return Interpreter.isEqual(left.execute(), right.execute()) != negated;
+        }
+
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            if (left == child) {
+                left = replacement;
+            } else {
+                right = replacement;
+            }
+        }
+    }
+
+    /* What the binary specializations share: the operator, the operands and the way out. */
+    abstract static class BinaryNode extends Node {
+        final Root root;
+        final Token operator;
+        Node left;
+        Node right;
+
+        BinaryNode(Root root, Token operator, Node left, Node right) {
+            this.root = root;
+            this.operator = operator;
+            this.left = adopt(left);
+            this.right = adopt(right);
+        }
+
+        @Override
+        final void replaceChild(Node child, Node replacement) {
+            if (left == child) {
+                left = replacement;
+            } else {
+                right = replacement;
+            }
+        }
+
+        /* A guard failed. Both operands are already evaluated, so finish with the boxed rules. */
+        final Object deoptimize(Object leftValue, Object rightValue) {
+            root.deoptimizations++;
+            replace(new GenericBinary(root, operator, left, right));
+            return Interpreter.binary(operator, leftValue, rightValue);
+        }
+    }
+
+    static final class UninitializedBinary extends BinaryNode {
+        UninitializedBinary(Root root, Token operator, Node left, Node right) {
+            super(root, operator, left, right);
+        }
+
+        @Override
+        Object execute() {
+            Object leftValue = left.execute();
+            Object rightValue = right.execute();
+            replace(specialize(leftValue, rightValue));
+            return Interpreter.binary(operator, leftValue, rightValue);
+        }
+
+        private BinaryNode specialize(Object leftValue, Object rightValue) {
+            boolean numbers = leftValue instanceof Double && rightValue instanceof Double;
+            switch (operator.type) {
+                case TokenType.PLUS:
+                    if (leftValue instanceof String && rightValue instanceof String) {
+                        root.specializations++;
+                        return new StringConcat(root, operator, left, right);
+                    }
+                    if (!numbers) break;
+                    root.specializations++;
+                    return new NumberArithmetic(root, operator, left, right);
+                case TokenType.MINUS:
+                case TokenType.STAR:
+                case TokenType.SLASH:
+                    if (!numbers) break;
+                    root.specializations++;
+                    return new NumberArithmetic(root, operator, left, right);
+                case TokenType.GREATER:
+                case TokenType.GREATER_EQUAL:
+                case TokenType.LESS:
+                case TokenType.LESS_EQUAL:
+                    if (!numbers) break;
+                    root.specializations++;
+                    return new NumberComparison(root, operator, left, right);
+            }
+            return new GenericBinary(root, operator, left, right);
+        }
+    }
+
+    static final class NumberArithmetic extends BinaryNode {
+        NumberArithmetic(Root root, Token operator, Node left, Node right) {
+            super(root, operator, left, right);
+        }
+
+        @Override
+        Object execute() {
+            try {
+                return executeNumber();
+            } catch (UnexpectedResult result) {
+                return result.value;
+            }
+        }
+
+        @Override
+        double executeNumber() {
+            double leftValue;
+            try {
+                leftValue = left.executeNumber();
+            } catch (UnexpectedResult result) {
+                return expectNumber(deoptimize(result.value, right.execute()));
+            }
+            double rightValue;
+            try {
+                rightValue = right.executeNumber();
+            } catch (UnexpectedResult result) {
+                return expectNumber(deoptimize(leftValue, result.value));
+            }
+
+            root.hits[NUMBER_ARITHMETIC]++;
+            switch (operator.type) {
+                case TokenType.PLUS: return leftValue + rightValue;
+                case TokenType.MINUS: return leftValue - rightValue;
+                case TokenType.STAR: return leftValue * rightValue;
+                default: return leftValue / rightValue;
+            }
+        }
+    }
+
+    static final class NumberComparison extends BinaryNode {
+        NumberComparison(Root root, Token operator, Node left, Node right) {
+            super(root, operator, left, right);
+        }
+
+        @Override
+        Object execute() {
+            double leftValue;
+            try {
+                leftValue = left.executeNumber();
+            } catch (UnexpectedResult result) {
+                return deoptimize(result.value, right.execute());
+            }
+            double rightValue;
+            try {
+                rightValue = right.executeNumber();
+            } catch (UnexpectedResult result) {
+                return deoptimize(leftValue, result.value);
+            }
+
+            root.hits[NUMBER_COMPARISON]++;
+            switch (operator.type) {
+                case TokenType.GREATER: return leftValue > rightValue;
+                case TokenType.GREATER_EQUAL: return leftValue >= rightValue;
+                case TokenType.LESS: return leftValue < rightValue;
+                default: return leftValue <= rightValue;
+            }
+        }
+    }
+
+    static final class StringConcat extends BinaryNode {
+        StringConcat(Root root, Token operator, Node left, Node right) {
+            super(root, operator, left, right);
+        }
+
+        @Override
+        Object execute() {
+            Object leftValue = left.execute();
+            Object rightValue = right.execute();
+            if (leftValue instanceof String a && rightValue instanceof String b) {
+                root.hits[STRING_CONCAT]++;
+                return a + b;
+            }
+            return deoptimize(leftValue, rightValue);
+        }
+    }
+
+    static final class GenericBinary extends BinaryNode {
+        GenericBinary(Root root, Token operator, Node left, Node right) {
+            super(root, operator, left, right);
+        }
+
+        @Override
+        Object execute() {
+            Object leftValue = left.execute();
+            Object rightValue = right.execute();
+            root.hits[GENERIC]++;
+            return Interpreter.binary(operator, leftValue, rightValue);
+        }
+    }
+
+    /* Unary minus, which has the same life as the binary operators with one operand. */
+    abstract static class NegateNode extends Node {
+        final Root root;
+        final Token operator;
+        Node right;
+
+        NegateNode(Root root, Token operator, Node right) {
+            this.root = root;
+            this.operator = operator;
+            this.right = adopt(right);
+        }
+
+        @Override
+        final void replaceChild(Node child, Node replacement) {
+            right = replacement;
+        }
+    }
+
+    static final class UninitializedNegate extends NegateNode {
+        UninitializedNegate(Root root, Token operator, Node right) {
+            super(root, operator, right);
+        }
+
+        @Override
+        Object execute() {
+            Object value = right.execute();
+            if (value instanceof Double) {
+                root.specializations++;
+                replace(new NumberNegate(root, operator, right));
+            } else {
+                replace(new GenericNegate(root, operator, right));
+            }
+            return Interpreter.unary(operator, value);
+        }
+    }
+
+    static final class NumberNegate extends NegateNode {
+        NumberNegate(Root root, Token operator, Node right) {
+            super(root, operator, right);
+        }
+
+        @Override
+        Object execute() {
+            try {
+                return executeNumber();
+            } catch (UnexpectedResult result) {
+                return result.value;
+            }
+        }
+
+        @Override
+        double executeNumber() {
+            double value;
+            try {
+                value = right.executeNumber();
+            } catch (UnexpectedResult result) {
+                root.deoptimizations++;
+                replace(new GenericNegate(root, operator, right));
+                return expectNumber(Interpreter.unary(operator, result.value));
+            }
+            root.hits[NUMBER_NEGATE]++;
+            return -value;
+        }
+    }
+
+    static final class GenericNegate extends NegateNode {
+        GenericNegate(Root root, Token operator, Node right) {
+            super(root, operator, right);
+        }
+
+        @Override
+        Object execute() {
+            Object value = right.execute();
+            root.hits[GENERIC]++;
+            return Interpreter.unary(operator, value);
+        }
+    }
+}
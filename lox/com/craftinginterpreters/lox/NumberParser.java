@@ -0,0 +1,142 @@
+package com.craftinginterpreters.lox;
+
+import java.math.BigInteger;
+
+/*
+ * Parses Lox number literals (digits, optionally "." digits) straight from the source.
+ * Exact small cases use Clinger's fast path, the rest Eisel-Lemire, and anything either one
+ * can't decide falls back to Double.parseDouble. The result is always bit-identical to it.
+ */
+final class NumberParser {
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    /* 128-bit truncated mantissas of 10^e, split into low and high words, for e in [MIN_EXPONENT, MAX_EXPONENT]. */
+    private static final int MIN_EXPONENT = -348;
+    private static final int MAX_EXPONENT = 347;
+    private static final long[] POWERS_LOW = new long[MAX_EXPONENT - MIN_EXPONENT + 1];
+    private static final long[] POWERS_HIGH = new long[MAX_EXPONENT - MIN_EXPONENT + 1];
+
+    static {
+        BigInteger five = BigInteger.valueOf(5);
+        for (int exponent = MIN_EXPONENT; exponent <= MAX_EXPONENT; exponent++) {
+            BigInteger power = five.pow(Math.abs(exponent));
+            int bits = power.bitLength();
+            BigInteger mantissa;
+            if (exponent >= 0) {
+                mantissa = bits >= 128 ? power.shiftRight(bits - 128) : power.shiftLeft(128 - bits);
+            } else {
+                mantissa = BigInteger.ONE.shiftLeft(bits + 127).divide(power);
+            }
+            POWERS_LOW[exponent - MIN_EXPONENT] = mantissa.longValue();
+            POWERS_HIGH[exponent - MIN_EXPONENT] = mantissa.shiftRight(64).longValue();
+        }
+    }
+
+    private NumberParser() {}
+
+    static double parse(CharSource source, int start, int end) {
+        /* Unsigned. Nineteen digits always fit in 64 bits, though not always in a signed long. */
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean truncated = false;
+
+        int current = start;
+        for (; current < end; current++) {
+            char c = source.charAt(current);
+            if (c == '.') break;
+            int digit = c - '0';
+            /* Leading zeros say nothing. */
+            if (mantissa == 0 && digit == 0) continue;
+            if (digits < 19) {
+                mantissa = mantissa * 10 + digit;
+                digits++;
+            } else {
+                exponent++;
+                if (digit != 0) truncated = true;
+            }
+        }
+
+        /* Skip the "." and read the fraction. */
+        for (current++; current < end; current++) {
+            int digit = source.charAt(current) - '0';
+            if (mantissa == 0 && digit == 0) {
+                exponent--;
+                continue;
+            }
+            if (digits < 19) {
+                mantissa = mantissa * 10 + digit;
+                digits++;
+                exponent--;
+            } else if (digit != 0) {
+                truncated = true;
+            }
+        }
+
+        if (mantissa == 0) return 0.0;
+        if (!truncated) {
+            /* Both operands are exact doubles, so the one rounding is the correct one. */
+            if (mantissa >= 0 && mantissa < (1L << 53) && exponent >= -22 && exponent <= 22) {
+                return exponent < 0
+                    ? mantissa / POWERS_OF_TEN[-exponent]
+                    : mantissa * POWERS_OF_TEN[exponent];
+            }
+
+            double value = eiselLemire(mantissa, exponent);
+            if (!Double.isNaN(value)) return value;
+        }
+
+        return Double.parseDouble(source.substring(start, end));
+    }
+
+    /* Returns NaN when the truncated power of ten leaves the rounding ambiguous. */
+    private static double eiselLemire(long mantissa, int exponent) {
+        if (exponent < MIN_EXPONENT || exponent > MAX_EXPONENT) return Double.NaN;
+
+        int shift = Long.numberOfLeadingZeros(mantissa);
+        mantissa <<= shift;
+        long binaryExponent = ((217706L * exponent) >> 16) + 64 + 1023 - shift;
+
+        long powerHigh = POWERS_HIGH[exponent - MIN_EXPONENT];
+        long powerLow = POWERS_LOW[exponent - MIN_EXPONENT];
+        long high = Math.unsignedMultiplyHigh(mantissa, powerHigh);
+        long low = mantissa * powerHigh;
+
+        /* The low bits might carry into what we keep. Bring in the rest of the power. */
+        if ((high & 0x1FF) == 0x1FF && Long.compareUnsigned(low + mantissa, mantissa) < 0) {
+            long extraHigh = Math.unsignedMultiplyHigh(mantissa, powerLow);
+            long extraLow = mantissa * powerLow;
+            long mergedHigh = high;
+            long mergedLow = low + extraHigh;
+            if (Long.compareUnsigned(mergedLow, low) < 0) mergedHigh++;
+            if ((mergedHigh & 0x1FF) == 0x1FF && mergedLow + 1 == 0
+                    && Long.compareUnsigned(extraLow + mantissa, mantissa) < 0) {
+                return Double.NaN;
+            }
+            high = mergedHigh;
+            low = mergedLow;
+        }
+
+        /* Down to 54 bits, keeping one for rounding. */
+        long top = high >>> 63;
+        long result = high >>> (top + 9);
+        binaryExponent -= 1 ^ top;
+
+        /* Exactly halfway between two doubles. Round-half-even needs the exact value. */
+        if (low == 0 && (high & 0x1FF) == 0 && (result & 3) == 1) return Double.NaN;
+
+        result += result & 1;
+        result >>>= 1;
+        if ((result >>> 53) > 0) {
+            result >>>= 1;
+            binaryExponent++;
+        }
+
+        /* Subnormals and infinities are rare enough to leave to Double.parseDouble. */
+        if (binaryExponent <= 0 || binaryExponent >= 0x7FF) return Double.NaN;
+        return Double.longBitsToDouble(binaryExponent << 52 | (result & 0x000FFFFFFFFFFFFFL));
+    }
+}
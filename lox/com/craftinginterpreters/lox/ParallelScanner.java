@@ -0,0 +1,201 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/*
+ * Splits a large source at safe newlines and scans the pieces on a ForkJoinPool. In list mode
+ * each segment interns into its own LexemePool, since the pools aren't thread-safe.
+ */
+class ParallelScanner {
+    /* Below this a segment isn't worth a task. */
+    private static final int MIN_SEGMENT = 64 * 1024;
+
+    private final String source;
+    private final Diagnostics diagnostics;
+    private final ForkJoinPool pool;
+
+    ParallelScanner(String source, Diagnostics diagnostics) {
+        this(source, diagnostics, ForkJoinPool.commonPool());
+    }
+
+    ParallelScanner(String source, Diagnostics diagnostics, ForkJoinPool pool) {
+        this.source = source;
+        this.diagnostics = diagnostics;
+        this.pool = pool;
+    }
+
+    /* Token for token what Scanner.scanTokens() returns. */
+    List<Token> scanTokens() {
+        List<Segment> segments = split();
+        List<Token> tokens = new ArrayList<>();
+        for (Segment segment : run(segments, false)) {
+            tokens.addAll(segment.tokens);
+        }
+        return tokens;
+    }
+
+    /* Token for token what Scanner.scanBuffer() returns. */
+    TokenBuffer scanBuffer() {
+        List<Segment> segments = split();
+        TokenBuffer tokens = new TokenBuffer(source, new LexemePool());
+        for (Segment segment : run(segments, true)) {
+            tokens.append(segment.buffer);
+        }
+        Segment last = segments.get(segments.size() - 1);
+        tokens.add(TokenType.EOF, source.length(), 0, last.buffer.line(last.buffer.size() - 1));
+        return tokens;
+    }
+
+    private List<Segment> run(List<Segment> segments, boolean buffered) {
+        List<Callable<Segment>> tasks = new ArrayList<>();
+        for (Segment segment : segments) {
+            tasks.add(() -> segment.scan(buffered));
+        }
+
+        List<Segment> scanned = new ArrayList<>();
+        for (Future<Segment> future : pool.invokeAll(tasks)) {
+            try {
+                scanned.add(future.get());
+            } catch (InterruptedException error) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while scanning.", error);
+            } catch (ExecutionException error) {
+                throw new IllegalStateException("Scanning a segment failed.", error.getCause());
+            }
+        }
+
+        /* Errors come back in source order, the same as a sequential scan would report them. */
+        for (Segment segment : scanned) {
+            for (Diagnostic error : segment.errors.errors()) {
+                diagnostics.error(error.line, error.where, error.message);
+            }
+        }
+
+        /* Only the last segment really ends the source. */
+        if (!buffered) {
+            for (int i = 0; i < scanned.size() - 1; i++) {
+                List<Token> tokens = scanned.get(i).tokens;
+                tokens.remove(tokens.size() - 1);
+            }
+        }
+        return scanned;
+    }
+
+    /* The cheap pre-pass. Only strings and block comments can hold a newline we can't split at. */
+    private List<Segment> split() {
+        int length = source.length();
+        int count = Math.max(1, Math.min(pool.getParallelism() * 4, length / MIN_SEGMENT));
+
+        List<Segment> segments = new ArrayList<>();
+        PrePass pass = new PrePass(source);
+        int from = 0;
+        int fromLine = 1;
+        int target = length / count;
+
+        while (pass.current < length) {
+            char c = source.charAt(pass.current++);
+            switch (c) {
+                case '"': pass.string(); break;
+                case '/':
+                    if (pass.peek() == '/') {
+                        pass.current++;
+                        pass.lineComment();
+                    } else if (pass.peek() == '*') {
+                        pass.current++;
+                        pass.blockComment();
+                    }
+                    break;
+                case '\n':
+                    pass.newlines++;
+                    if (pass.current >= target && pass.current < length) {
+                        segments.add(new Segment(from, pass.current, fromLine));
+                        from = pass.current;
+                        fromLine = pass.newlines + 1;
+                        target = from + length / count;
+                    }
+                    break;
+            }
+        }
+
+        segments.add(new Segment(from, length, fromLine));
+        return segments;
+    }
+
+    /* Skips over lexemes exactly the way Scanner does, counting newlines as it goes. */
+    private static class PrePass {
+        private final String source;
+        private int current = 0;
+        private int newlines = 0;
+
+        PrePass(String source) {
+            this.source = source;
+        }
+
+        private char peek() {
+            return current < source.length() ? source.charAt(current) : '\0';
+        }
+
+        private char peekNext() {
+            return current + 1 < source.length() ? source.charAt(current + 1) : '\0';
+        }
+
+        private void string() {
+            while (current < source.length() && source.charAt(current) != '"') {
+                if (source.charAt(current) == '\n') newlines++;
+                current++;
+            }
+            if (current < source.length()) current++;
+        }
+
+        private void lineComment() {
+            while (current < source.length() && source.charAt(current) != '\n') current++;
+        }
+
+        /* Mirrors Scanner.multicomment(), quirks and all, so both agree where a comment ends. */
+        private void blockComment() {
+            while ((peek() != '*' || peekNext() != '/') && current < source.length()) {
+                if (peek() == '/' && peekNext() == '*') {
+                    current += 2;
+                    blockComment();
+                    if (current >= source.length()) break;
+                }
+                if (peek() == '\n') newlines++;
+                current++;
+            }
+
+            if (current >= source.length()) return;
+            current += 2;
+        }
+    }
+
+    private class Segment {
+        private final int from;
+        private final int to;
+        private final int line;
+        private final DiagnosticList errors = new DiagnosticList();
+        private List<Token> tokens;
+        private TokenBuffer buffer;
+
+        Segment(int from, int to, int line) {
+            this.from = from;
+            this.to = to;
+            this.line = line;
+        }
+
+        Segment scan(boolean buffered) {
+            Diagnostics sink = diagnostics.level() == Diagnostics.Level.OFF ? Diagnostics.NONE : errors;
+            Scanner scanner = new Scanner(source, from, to, line, sink);
+            if (buffered) {
+                buffer = scanner.scanBuffer();
+            } else {
+                tokens = scanner.scanTokens();
+            }
+            return this;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/*
+ * Parsed trees by source text, for callers that see the same source again and again. Least
+ * recently used entries go first, once there are too many or they weigh too much together.
+ * Safe to share between threads. A tree is never changed once parsed: Expr fields are final,
+ * and operator tokens never touch their lazily boxed literal. So one tree can be handed to any
+ * number of threads at once.
+ *
+ * Two threads missing on the same source both parse it, and the second put wins. Parsing
+ * outside the lock is worth more than the odd duplicate.
+ */
+final class ParseCache {
+    /* Roughly the bytes an entry keeps alive: the source's chars and the nodes with their tokens. */
+    private static final int BYTES_PER_NODE = 48;
+
+    private final int maxEntries;
+    private final long maxWeight;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    private record Entry(Expr expr, long weight) {}
+
+    ParseCache(int maxEntries, long maxWeight) {
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+    }
+
+    synchronized Expr get(String source) {
+        Entry entry = entries.get(source);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.expr;
+    }
+
+    /* Only put trees from a parse without errors, or the errors are lost on the next hit. */
+    void put(String source, Expr expr) {
+        long entryWeight = weigh(source, expr);
+        if (entryWeight > maxWeight) return;
+
+        synchronized (this) {
+            Entry previous = entries.put(source, new Entry(expr, entryWeight));
+            if (previous != null) weight -= previous.weight;
+            weight += entryWeight;
+
+            Iterator<Entry> eldest = entries.values().iterator();
+            while (entries.size() > maxEntries || weight > maxWeight) {
+                weight -= eldest.next().weight;
+                eldest.remove();
+                evictions++;
+            }
+        }
+    }
+
+    private static long weigh(String source, Expr expr) {
+        int[] nodes = {0};
+        ExprWalker.walk(expr, new ExprWalker.Listener() {
+            @Override
+            public void enter(Expr expr) {
+                nodes[0]++;
+            }
+
+            @Override
+            public void exit(Expr expr) {}
+        });
+        return 2L * source.length() + (long) BYTES_PER_NODE * nodes[0];
+    }
+
+    synchronized void clear() {
+        entries.clear();
+        weight = 0;
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    synchronized long weight() {
+        return weight;
+    }
+
+    synchronized long hits() {
+        return hits;
+    }
+
+    synchronized long misses() {
+        return misses;
+    }
+
+    synchronized long evictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return entries.size() + " trees, " + weight + " bytes, " + hits + " hits, " + misses + " misses, "
+            + evictions + " evictions";
+    }
+}
@@ -1,39 +1,490 @@
 package com.craftinginterpreters.lox;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 class Parser {
-    private static class ParseError extends RuntimeException {}
-    private final List<Token> tokens;
-    private int current = 0;
+    /* No stack trace and no state, so one instance does for every error. Never serialized. */
+    @SuppressWarnings("serial")
+    private static class ParseError extends RuntimeException {
+        ParseError() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static final ParseError PARSE_ERROR = new ParseError();
+    private final TokenCursor tokens;
+    private final Diagnostics diagnostics;
+    private final ExprFactory factory;
+    private final boolean tracing;
+
+    /* Binding levels, loosest first. Zero means the token is no infix operator. */
+    private static final int COMMA_LEVEL = 1;
+    private static final int TERNARY_LEVEL = 2;
+    private static final int EQUALITY_LEVEL = 3;
+    private static final int COMPARISON_LEVEL = 4;
+    private static final int TERM_LEVEL = 5;
+    private static final int FACTOR_LEVEL = 6;
+    private static final int UNARY_LEVEL = 7;
+
+    private static final int[] INFIX_LEVELS = new int[TokenType.values().length];
+    private static final long UNARY_OPERATORS = bit(TokenType.BANG) | bit(TokenType.MINUS);
+    private static final long LITERALS = bit(TokenType.NUMBER) | bit(TokenType.STRING);
+
+    static {
+        INFIX_LEVELS[TokenType.COMMA.ordinal()] = COMMA_LEVEL;
+        INFIX_LEVELS[TokenType.QUESTION.ordinal()] = TERNARY_LEVEL;
+        INFIX_LEVELS[TokenType.BANG_EQUAL.ordinal()] = EQUALITY_LEVEL;
+        INFIX_LEVELS[TokenType.EQUAL_EQUAL.ordinal()] = EQUALITY_LEVEL;
+        INFIX_LEVELS[TokenType.GREATER.ordinal()] = COMPARISON_LEVEL;
+        INFIX_LEVELS[TokenType.GREATER_EQUAL.ordinal()] = COMPARISON_LEVEL;
+        INFIX_LEVELS[TokenType.LESS.ordinal()] = COMPARISON_LEVEL;
+        INFIX_LEVELS[TokenType.LESS_EQUAL.ordinal()] = COMPARISON_LEVEL;
+        INFIX_LEVELS[TokenType.MINUS.ordinal()] = TERM_LEVEL;
+        INFIX_LEVELS[TokenType.PLUS.ordinal()] = TERM_LEVEL;
+        INFIX_LEVELS[TokenType.STAR.ordinal()] = FACTOR_LEVEL;
+        INFIX_LEVELS[TokenType.SLASH.ordinal()] = FACTOR_LEVEL;
+    }
 
     Parser(List<Token> tokens) {
+        this(TokenCursor.of(tokens), Diagnostics.NONE);
+    }
+
+    Parser(List<Token> tokens, Diagnostics diagnostics) {
+        this(TokenCursor.of(tokens), diagnostics);
+    }
+
+    /* Walk a TokenBuffer without one Token object per token. */
+    Parser(TokenCursor tokens, Diagnostics diagnostics) {
+        this(tokens, diagnostics, ExprFactory.PLAIN);
+    }
+
+    Parser(TokenCursor tokens, Diagnostics diagnostics, ExprFactory factory) {
         this.tokens = tokens;
+        this.diagnostics = diagnostics;
+        this.factory = factory;
+        this.tracing = diagnostics.tracing();
     }
 
     Expr parse() {
         try {
             return expression();
         } catch (ParseError error) {
-            System.out.println("Caught ParseError.");
+            trace("Caught ParseError.");
+            return null;
+        }
+    }
+
+    /* Stands in for a statement that didn't parse, so parseAll() keeps one entry per statement. */
+    static final Expr ERROR = new Expr.Literal(null);
+
+    /*
+     * Recovery mode. Parses ';'-separated expressions up to EOF and after an error skips to the
+     * next statement boundary instead of giving up, so one pass reports every error. Returns
+     * one tree per statement, ERROR for those that failed; the errors went to the Diagnostics.
+     */
+    List<Expr> parseAll() {
+        return statements(new ArrayList<>());
+    }
+
+    /*
+     * parseAll() as one tree to run: the statements joined by commas where their ';' were, so in
+     * order with the last one as the value. Null if any statement failed.
+     */
+    Expr parseProgram() {
+        if (isAtEnd()) return parseIterative();
+        List<Token> separators = new ArrayList<>();
+        List<Expr> statements = statements(separators);
+        if (statements.contains(ERROR)) return null;
+
+        Expr program = statements.get(0);
+        for (int i = 1; i < statements.size(); i++) {
+            /* A comma like any other, so it prints as one too. Only the line is the ;'s. */
+            Token semicolon = separators.get(i - 1);
+            Token operator = new Token(TokenType.COMMA, ",", null, semicolon.line);
+            program = factory.binary(program, operator, statements.get(i));
+        }
+        return program;
+    }
+
+    private List<Expr> statements(List<Token> separators) {
+        List<Expr> statements = new ArrayList<>();
+        while (!isAtEnd()) {
+            try {
+                Expr expr = iterative();
+                if (!isAtEnd()) {
+                    consume(TokenType.SEMICOLON, "Expect ';' after expression.");
+                    separators.add(previous());
+                }
+                statements.add(expr);
+            } catch (ParseError error) {
+                trace("Caught ParseError, synchronizing.");
+                statements.add(ERROR);
+                synchronize();
+            }
+        }
+        return statements;
+    }
+
+    /* Same trees and errors as parse(), from a precedence table instead of a method per level. */
+    Expr parsePratt() {
+        try {
+            return pratt(COMMA_LEVEL);
+        } catch (ParseError error) {
+            trace("Caught ParseError.");
+            return null;
+        }
+    }
+
+    /* TokenType has well under 64 constants, so a set of them fits in a long. */
+    private static long bit(TokenType type) {
+        return 1L << type.ordinal();
+    }
+
+    /*
+     * Parses everything binding at least as tight as minLevel. maxLevel keeps the trees the
+     * recursive descent builds: once an operator is taken only that level or looser may follow,
+     * and after a ?: only a comma, since ternary() never loops and equality() sits below it.
+     */
+    private Expr pratt(int minLevel) {
+        Expr expr = prefix();
+        int maxLevel = UNARY_LEVEL;
+
+        while (true) {
+            int level = INFIX_LEVELS[tokens.peekType().ordinal()];
+            if (level < minLevel || level > maxLevel || level == 0) return expr;
+
+            tokens.advance();
+            Token operator = previous();
+            switch (level) {
+                case TERNARY_LEVEL:
+                    expr = factory.binary(expr, operator, pratt(COMMA_LEVEL));
+                    if (tokens.peekType() != TokenType.COLON) throw error(peek(), "Expected colon");
+                    tokens.advance();
+                    expr = factory.binary(expr, previous(), pratt(COMMA_LEVEL));
+                    maxLevel = COMMA_LEVEL;
+                    break;
+                case COMMA_LEVEL:
+                    /* The right side of a comma is an equality, not a ternary. */
+                    expr = factory.binary(expr, operator, pratt(EQUALITY_LEVEL));
+                    maxLevel = COMMA_LEVEL;
+                    break;
+                default:
+                    expr = factory.binary(expr, operator, pratt(level + 1));
+                    maxLevel = level;
+                    break;
+            }
+        }
+    }
+
+    /* Unary operators and primaries. Nothing infix binds tighter than a unary operand. */
+    private Expr prefix() {
+        TokenType type = tokens.peekType();
+        long mask = bit(type);
+        if ((mask & UNARY_OPERATORS) != 0) {
+            tokens.advance();
+            Token operator = previous();
+            return factory.unary(operator, prefix());
+        }
+        if ((mask & LITERALS) != 0) {
+            tokens.advance();
+            return factory.literal(tokens.previousLiteral());
+        }
+
+        switch (type) {
+            case TokenType.FALSE:
+                tokens.advance();
+                return factory.literal(false);
+            case TokenType.TRUE:
+                tokens.advance();
+                return factory.literal(true);
+            case TokenType.NIL:
+                tokens.advance();
+                return factory.literal(null);
+            case TokenType.LEFT_PAREN:
+                tokens.advance();
+                Expr expr = pratt(COMMA_LEVEL);
+                consume(TokenType.RIGHT_PAREN, "Expect ')' after expression.");
+                return factory.grouping(expr);
+            default:
+                throw error(peek(), "Expect expression.");
+        }
+    }
+
+    /*
+     * parsePratt() with its recursion moved onto the heap. Same trees, same errors, but the
+     * nesting depth is only bounded by memory, not by the thread stack.
+     */
+    Expr parseIterative() {
+        try {
+            return iterative();
+        } catch (ParseError error) {
+            trace("Caught ParseError.");
+            return null;
+        }
+    }
+
+    /* What a suspended pratt() or prefix() call was waiting for. */
+    private static final int UNARY_FRAME = 0;
+    private static final int GROUP_FRAME = 1;
+    private static final int RIGHT_FRAME = 2;
+    private static final int THEN_FRAME = 3;
+    private static final int ELSE_FRAME = 4;
+
+    private static final class Frame {
+        final int kind;
+        final Expr left;
+        final Token operator;
+        final int level;
+        final int minLevel;
+
+        Frame(int kind, Expr left, Token operator, int level, int minLevel) {
+            this.kind = kind;
+            this.left = left;
+            this.operator = operator;
+            this.level = level;
+            this.minLevel = minLevel;
+        }
+    }
+
+    private Expr iterative() {
+        ArrayDeque<Frame> stack = new ArrayDeque<>();
+        int minLevel = COMMA_LEVEL;
+
+        while (true) {
+            /* The prefix() part. Unary operators and groups wait on the stack for their operand. */
+            Expr expr = null;
+            while (expr == null) {
+                TokenType type = tokens.peekType();
+                long mask = bit(type);
+                if ((mask & UNARY_OPERATORS) != 0) {
+                    tokens.advance();
+                    stack.push(new Frame(UNARY_FRAME, null, previous(), 0, minLevel));
+                } else if ((mask & LITERALS) != 0) {
+                    tokens.advance();
+                    expr = factory.literal(tokens.previousLiteral());
+                } else if (type == TokenType.FALSE) {
+                    tokens.advance();
+                    expr = factory.literal(false);
+                } else if (type == TokenType.TRUE) {
+                    tokens.advance();
+                    expr = factory.literal(true);
+                } else if (type == TokenType.NIL) {
+                    tokens.advance();
+                    expr = factory.literal(null);
+                } else if (type == TokenType.LEFT_PAREN) {
+                    tokens.advance();
+                    stack.push(new Frame(GROUP_FRAME, null, null, 0, minLevel));
+                    minLevel = COMMA_LEVEL;
+                } else {
+                    throw error(peek(), "Expect expression.");
+                }
+            }
+            expr = unwindUnary(stack, expr);
+            int maxLevel = UNARY_LEVEL;
+
+            /* The pratt() loop. An operator suspends it until its right side is parsed. */
+            while (true) {
+                int level = INFIX_LEVELS[tokens.peekType().ordinal()];
+                if (level >= minLevel && level <= maxLevel && level != 0) {
+                    tokens.advance();
+                    if (level == TERNARY_LEVEL) {
+                        stack.push(new Frame(THEN_FRAME, expr, previous(), level, minLevel));
+                        minLevel = COMMA_LEVEL;
+                    } else {
+                        stack.push(new Frame(RIGHT_FRAME, expr, previous(), level, minLevel));
+                        minLevel = level == COMMA_LEVEL ? EQUALITY_LEVEL : level + 1;
+                    }
+                    break;
+                }
+
+                /* This level is done. Hand expr back to whoever was waiting for it. */
+                if (stack.isEmpty()) return expr;
+                Frame frame = stack.pop();
+                if (frame.kind == RIGHT_FRAME) {
+                    expr = factory.binary(frame.left, frame.operator, expr);
+                    maxLevel = frame.level;
+                } else if (frame.kind == THEN_FRAME) {
+                    expr = factory.binary(frame.left, frame.operator, expr);
+                    if (tokens.peekType() != TokenType.COLON) throw error(peek(), "Expected colon");
+                    tokens.advance();
+                    stack.push(new Frame(ELSE_FRAME, expr, previous(), 0, frame.minLevel));
+                    minLevel = COMMA_LEVEL;
+                    break;
+                } else if (frame.kind == ELSE_FRAME) {
+                    expr = factory.binary(frame.left, frame.operator, expr);
+                    maxLevel = COMMA_LEVEL;
+                } else {
+                    consume(TokenType.RIGHT_PAREN, "Expect ')' after expression.");
+                    expr = unwindUnary(stack, factory.grouping(expr));
+                    maxLevel = UNARY_LEVEL;
+                }
+                minLevel = frame.minLevel;
+            }
+        }
+    }
+
+    /* parseIterative() writing into a FlatAst. No Expr, and no Token for an operator either. */
+    FlatAst parseFlat() {
+        FlatAst ast = new FlatAst();
+        try {
+            ast.root(flat(ast));
+            return ast;
+        } catch (ParseError error) {
+            trace("Caught ParseError.");
             return null;
         }
     }
 
+    /* Fields of a suspended call on flat()'s int stack. */
+    private static final int FRAME_KIND = 0;
+    private static final int FRAME_LEFT = 1;
+    private static final int FRAME_OPERATOR = 2;
+    private static final int FRAME_LINE = 3;
+    private static final int FRAME_LEVEL = 4;
+    private static final int FRAME_MIN_LEVEL = 5;
+    private static final int FRAME_SIZE = 6;
+
+    private static final TokenType[] TOKEN_TYPES = TokenType.values();
+
+    /* The same state machine as iterative(), with node handles and frames packed in an int[]. */
+    private int flat(FlatAst ast) {
+        int[] stack = new int[FRAME_SIZE * 64];
+        int top = 0;
+        int minLevel = COMMA_LEVEL;
+
+        while (true) {
+            int node = -1;
+            while (node < 0) {
+                TokenType type = tokens.peekType();
+                if ((bit(type) & UNARY_OPERATORS) != 0) {
+                    tokens.advance();
+                    stack = push(stack, top, UNARY_FRAME, -1, type, tokens.previousLine(), 0, minLevel);
+                    top += FRAME_SIZE;
+                    continue;
+                }
+
+                switch (type) {
+                    case TokenType.NUMBER:
+                        tokens.advance();
+                        node = ast.number(tokens.previousNumber());
+                        break;
+                    case TokenType.STRING:
+                        tokens.advance();
+                        node = ast.string((String) tokens.previousLiteral());
+                        break;
+                    case TokenType.FALSE:
+                        tokens.advance();
+                        node = ast.bool(false);
+                        break;
+                    case TokenType.TRUE:
+                        tokens.advance();
+                        node = ast.bool(true);
+                        break;
+                    case TokenType.NIL:
+                        tokens.advance();
+                        node = ast.nil();
+                        break;
+                    case TokenType.LEFT_PAREN:
+                        tokens.advance();
+                        stack = push(stack, top, GROUP_FRAME, -1, type, 0, 0, minLevel);
+                        top += FRAME_SIZE;
+                        minLevel = COMMA_LEVEL;
+                        break;
+                    default:
+                        throw error(peek(), "Expect expression.");
+                }
+            }
+            for (; top > 0 && stack[top - FRAME_SIZE + FRAME_KIND] == UNARY_FRAME; top -= FRAME_SIZE) {
+                int frame = top - FRAME_SIZE;
+                node = ast.unary(TOKEN_TYPES[stack[frame + FRAME_OPERATOR]], stack[frame + FRAME_LINE], node);
+            }
+            int maxLevel = UNARY_LEVEL;
+
+            while (true) {
+                TokenType type = tokens.peekType();
+                int level = INFIX_LEVELS[type.ordinal()];
+                if (level >= minLevel && level <= maxLevel && level != 0) {
+                    tokens.advance();
+                    int kind = level == TERNARY_LEVEL ? THEN_FRAME : RIGHT_FRAME;
+                    stack = push(stack, top, kind, node, type, tokens.previousLine(), level, minLevel);
+                    top += FRAME_SIZE;
+                    if (level == TERNARY_LEVEL) {
+                        minLevel = COMMA_LEVEL;
+                    } else {
+                        minLevel = level == COMMA_LEVEL ? EQUALITY_LEVEL : level + 1;
+                    }
+                    break;
+                }
+
+                if (top == 0) return node;
+                top -= FRAME_SIZE;
+                int kind = stack[top + FRAME_KIND];
+                if (kind == GROUP_FRAME) {
+                    consume(TokenType.RIGHT_PAREN, "Expect ')' after expression.");
+                    node = ast.grouping(node);
+                    for (; top > 0 && stack[top - FRAME_SIZE + FRAME_KIND] == UNARY_FRAME; top -= FRAME_SIZE) {
+                        int frame = top - FRAME_SIZE;
+                        node = ast.unary(TOKEN_TYPES[stack[frame + FRAME_OPERATOR]], stack[frame + FRAME_LINE], node);
+                    }
+                    maxLevel = UNARY_LEVEL;
+                    minLevel = stack[top + FRAME_MIN_LEVEL];
+                    continue;
+                }
+
+                node = ast.binary(stack[top + FRAME_LEFT], TOKEN_TYPES[stack[top + FRAME_OPERATOR]],
+                        stack[top + FRAME_LINE], node);
+                if (kind == THEN_FRAME) {
+                    if (tokens.peekType() != TokenType.COLON) throw error(peek(), "Expected colon");
+                    tokens.advance();
+                    int outer = stack[top + FRAME_MIN_LEVEL];
+                    stack = push(stack, top, ELSE_FRAME, node, TokenType.COLON, tokens.previousLine(), 0, outer);
+                    top += FRAME_SIZE;
+                    minLevel = COMMA_LEVEL;
+                    break;
+                }
+                maxLevel = kind == ELSE_FRAME ? COMMA_LEVEL : stack[top + FRAME_LEVEL];
+                minLevel = stack[top + FRAME_MIN_LEVEL];
+            }
+        }
+    }
+
+    private static int[] push(int[] stack, int top, int kind, int left, TokenType operator, int line,
+                              int level, int minLevel) {
+        if (top + FRAME_SIZE > stack.length) stack = Arrays.copyOf(stack, stack.length * 2);
+        stack[top + FRAME_KIND] = kind;
+        stack[top + FRAME_LEFT] = left;
+        stack[top + FRAME_OPERATOR] = operator.ordinal();
+        stack[top + FRAME_LINE] = line;
+        stack[top + FRAME_LEVEL] = level;
+        stack[top + FRAME_MIN_LEVEL] = minLevel;
+        return stack;
+    }
+
+    /* Wrap a finished operand in the unary operators waiting for it. */
+    private Expr unwindUnary(ArrayDeque<Frame> stack, Expr expr) {
+        while (!stack.isEmpty() && stack.peek().kind == UNARY_FRAME) {
+            expr = factory.unary(stack.pop().operator, expr);
+        }
+        return expr;
+    }
+
     private Expr expression() {
-        System.out.println("Calling comma()");
+        trace("Calling comma()");
         return comma();
     }
 
     /* Match a comma OR ANYTHING OF HIGHER PRECEDENCE. */
     private Expr comma() {
-        System.out.println("Calling equality()");
+        trace("Calling equality()");
         Expr expr = ternary();
 
         while (match(TokenType.COMMA)) {
             Token operator = previous();
             Expr right = equality();
-            expr = new Expr.Binary(expr, operator, right);
+            expr = factory.binary(expr, operator, right);
         }
 
         return expr;
@@ -41,18 +492,18 @@ class Parser {
     
     /* Match a ternary OR ANYTHING OF HIGHER PRECEDENCE. */
     private Expr ternary() {
-        System.out.println("Calling equality()");
+        trace("Calling equality()");
         Expr expr = equality();
 
         /* Will not enter if we don't have a proper signature. */
         if (match(TokenType.QUESTION)) {
             Token operator = previous();
             Expr right = expression();
-            expr = new Expr.Binary(expr, operator, right);
+            expr = factory.binary(expr, operator, right);
             if (match(TokenType.COLON)) {
                 operator = previous();
                 right = expression();
-                expr = new Expr.Binary(expr, operator, right);
+                expr = factory.binary(expr, operator, right);
             }
             else {
                 throw error(peek(), "Expected colon");
@@ -64,14 +515,14 @@ class Parser {
 
     /* Match an equality OR ANYTHING OF HIGHER PRECEDENCE. */
     private Expr equality() {
-        System.out.println("Calling comparison()");
+        trace("Calling comparison()");
         Expr expr = comparison();
 
         /* Will not enter if we don't have a proper signature. */
         while (match(TokenType.BANG_EQUAL, TokenType.EQUAL_EQUAL)) {
             Token operator = previous();
             Expr right = comparison();
-            expr = new Expr.Binary(expr, operator, right);
+            expr = factory.binary(expr, operator, right);
         }
 
         return expr;
@@ -79,14 +530,14 @@ class Parser {
 
     /* Match a comparison OR ANYTHING OF HIGHER PRECEDENCE. */
     private Expr comparison() {
-        System.out.println("Calling term()");
+        trace("Calling term()");
         Expr expr = term();
 
         /* Will not enter if we don't have a proper signature. */
         while (match(TokenType.GREATER, TokenType.GREATER_EQUAL, TokenType.LESS, TokenType.LESS_EQUAL)) {
             Token operator = previous();
             Expr right = term();
-            expr = new Expr.Binary(expr, operator, right);
+            expr = factory.binary(expr, operator, right);
         }
 
         return expr;
@@ -94,13 +545,13 @@ class Parser {
 
     /* Addition, Subtraction */
     private Expr term() {
-        System.out.println("Calling factor()");
+        trace("Calling factor()");
         Expr expr = factor();
 
         while (match(TokenType.MINUS, TokenType.PLUS)) {
             Token operator = previous();
             Expr right = factor();
-            expr = new Expr.Binary(expr, operator, right);
+            expr = factory.binary(expr, operator, right);
         }
 
         return expr;
@@ -108,13 +559,13 @@ class Parser {
 
     /* Multiplication, Division */
     private Expr factor() {
-        System.out.println("Calling unary()");
+        trace("Calling unary()");
         Expr expr = unary();
 
         while (match(TokenType.STAR, TokenType.SLASH)) {
             Token operator = previous();
             Expr right = unary();
-            expr = new Expr.Binary(expr, operator, right);
+            expr = factory.binary(expr, operator, right);
         }
 
         return expr;
@@ -125,34 +576,34 @@ class Parser {
         if (match(TokenType.BANG, TokenType.MINUS)) {
             Token operator = previous();
             Expr right = unary();
-            return new Expr.Unary(operator, right);
+            return factory.unary(operator, right);
         }
 
-        System.out.println("Calling primary()");
+        trace("Calling primary()");
         return primary();
     }
 
     private Expr primary() {
-        System.out.println("IN primary()");
+        trace("IN primary()");
         /* Explicit new Literals. */
-        if (match(TokenType.FALSE)) return new Expr.Literal(false);
-        if (match(TokenType.TRUE)) return new Expr.Literal(true);
-        if (match(TokenType.NIL)) return new Expr.Literal(null);
+        if (match(TokenType.FALSE)) return factory.literal(false);
+        if (match(TokenType.TRUE)) return factory.literal(true);
+        if (match(TokenType.NIL)) return factory.literal(null);
 
         /* Any literal. */
         if (match(TokenType.NUMBER, TokenType.STRING)) {
-            System.out.println("This is a NUMBER so it should be here?");
-            return new Expr.Literal(previous().literal);
+            trace("This is a NUMBER so it should be here?");
+            return factory.literal(tokens.previousLiteral());
         }
 
         /* We must have a closing parenthetical after any parenthetical expression. */
         if (match(TokenType.LEFT_PAREN)) {
             Expr expr = expression();
             consume(TokenType.RIGHT_PAREN, "Expect ')' after expression.");
-            return new Expr.Grouping(expr);
+            return factory.grouping(expr);
         }
 
-        System.out.println("Let's throw an error...");
+        trace("Let's throw an error...");
         throw error(peek(), "Expect expression.");
     }
 
@@ -167,46 +618,58 @@ class Parser {
         return false;
     }
 
-    private Token consume(TokenType type, String message) {
-        if (check(type)) return advance();
+    private void consume(TokenType type, String message) {
+        if (check(type)) {
+            advance();
+            return;
+        }
 
         throw error(peek(), message);
     }
 
     private boolean check(TokenType type) {
         if (isAtEnd()) return false;
-        return peek().type == type;
+        return tokens.peekType() == type;
     }
 
-    private Token advance() {
-        if (!isAtEnd()) current++;
-        return previous();
+    private void advance() {
+        if (!isAtEnd()) tokens.advance();
     }
 
     private boolean isAtEnd() {
-        return peek().type == TokenType.EOF;
+        return tokens.peekType() == TokenType.EOF;
     }
     
+    /* These build a Token, so only use them for operators and errors. */
     private Token peek() {
-        return tokens.get(current);
+        return tokens.peek();
     }
 
     private Token previous() {
-        return tokens.get(current - 1);
+        return tokens.previous();
     }
 
     private ParseError error(Token token, String message) {
-        Lox.error(token, message);
-        return new ParseError();
+        if (token.type == TokenType.EOF) {
+            diagnostics.error(token.line, " at end", message);
+        } else {
+            diagnostics.error(token.line, " at '" + token.lexeme + "'", message);
+        }
+        return PARSE_ERROR;
+    }
+
+    /* A constant false branch unless someone asked for a trace. */
+    private void trace(String message) {
+        if (tracing) diagnostics.trace(message);
     }
 
     private void synchronize() {
         advance();
 
         while (!isAtEnd()) {
-            if (previous().type == TokenType.SEMICOLON) return;
+            if (tokens.previousType() == TokenType.SEMICOLON) return;
 
-            switch (peek().type) {
+            switch (tokens.peekType()) {
                 case TokenType.CLASS:
                 case TokenType.FUN:
                 case TokenType.VAR:
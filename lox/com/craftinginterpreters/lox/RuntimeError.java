@@ -0,0 +1,21 @@
+package com.craftinginterpreters.lox;
+
+/* A Lox program going wrong while it runs. The token says where, when there is one. Never serialized. */
+@SuppressWarnings("serial")
+class RuntimeError extends RuntimeException {
+    final Token token;
+    final int line;
+
+    RuntimeError(Token token, String message) {
+        super(message);
+        this.token = token;
+        this.line = token.line;
+    }
+
+    /* Bytecode only knows its line. */
+    RuntimeError(int line, String message) {
+        super(message);
+        this.token = null;
+        this.line = line;
+    }
+}
@@ -1,47 +1,71 @@
 package com.craftinginterpreters.lox;
 
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 public class Scanner {
-    private final String source;
+    private final CharSource source;
+    /* Only known when the whole source is in memory. */
+    private final String text;
     private final List<Token> tokens = new ArrayList<>();
+    private final Diagnostics diagnostics;
+    private final boolean tracing;
+    private final LexemePool lexemes;
+    private TokenBuffer buffer;
     private int start = 0;
     private int current = 0;
     private int line = 1;
 
-    private static final Map<String, TokenType> keywords;
-
-    static {
-        keywords = new HashMap<>();
-        keywords.put("and",     TokenType.AND);
-        keywords.put("class",   TokenType.CLASS);
-        keywords.put("else",    TokenType.ELSE);
-        keywords.put("false",   TokenType.FALSE);
-        keywords.put("for",     TokenType.FOR);
-        keywords.put("fun",     TokenType.FUN);
-        keywords.put("if",      TokenType.IF);
-        keywords.put("nil",     TokenType.NIL);
-        keywords.put("or",      TokenType.OR);
-        keywords.put("print",   TokenType.PRINT);
-        keywords.put("return",  TokenType.RETURN);
-        keywords.put("super",   TokenType.SUPER);
-        keywords.put("this",    TokenType.THIS);
-        keywords.put("true",    TokenType.TRUE);
-        keywords.put("var",     TokenType.VAR);
-        keywords.put("while",   TokenType.WHILE);
+    Scanner(String source) {
+        this(source, Diagnostics.NONE);
     }
 
-    Scanner(String source) {
-        this.source = source;
+    Scanner(String source, Diagnostics diagnostics) {
+        this(source, 0, source.length(), 1, diagnostics);
+    }
+
+    /* Scan only source[from, to), which begins on `line`. Used by ParallelScanner. */
+    Scanner(String source, int from, int to, int line, Diagnostics diagnostics) {
+        this(source, from, to, line, diagnostics, new LexemePool());
+    }
+
+    /* Share a LexemePool to keep one String per name across several sources. */
+    Scanner(String source, int from, int to, int line, Diagnostics diagnostics, LexemePool lexemes) {
+        this.source = CharSource.of(source, to);
+        this.text = source;
+        this.diagnostics = diagnostics;
+        this.tracing = diagnostics.tracing();
+        this.lexemes = lexemes;
+        this.start = from;
+        this.current = from;
+        this.line = line;
+    }
+
+    /* Streaming mode. Only the current lexeme is ever held in memory. */
+    Scanner(Reader reader) {
+        this(reader, Diagnostics.NONE);
+    }
+
+    Scanner(Reader reader, Diagnostics diagnostics) {
+        this.source = CharSource.of(reader);
+        this.text = null;
+        this.diagnostics = diagnostics;
+        this.tracing = diagnostics.tracing();
+        this.lexemes = new LexemePool();
+    }
+
+    Scanner(ReadableByteChannel channel, Charset charset, Diagnostics diagnostics) {
+        this(Channels.newReader(channel, charset), diagnostics);
     }
 
     List<Token> scanTokens() {
         while (!isAtEnd()) {
             /* We are at the beginning of the next lexeme. */
-            start = current;
+            release();
             scanToken();
         }
 
@@ -49,6 +73,48 @@ public class Scanner {
         return tokens;
     }
 
+    /* Scan into a TokenBuffer. Lexemes point back into the source instead of being copied. */
+    TokenBuffer scanBuffer() {
+        if (text == null) {
+            throw new IllegalStateException("A streaming Scanner has no source to point back into.");
+        }
+
+        buffer = new TokenBuffer(text, lexemes);
+        while (!isAtEnd()) {
+            release();
+            scanToken();
+        }
+
+        buffer.add(TokenType.EOF, current, 0, line);
+        return buffer;
+    }
+
+    /* Pull mode. Scan just far enough to produce the next token, then EOF forever. */
+    Token nextToken() {
+        tokens.clear();
+        while (tokens.isEmpty() && !isAtEnd()) {
+            release();
+            scanToken();
+        }
+
+        if (tokens.isEmpty()) return new Token(TokenType.EOF, "", null, line);
+        return tokens.get(0);
+    }
+
+    /* Pull mode. Scan until `into` gets one more token. Once the source runs out, add EOF and return false. */
+    boolean scanNext(TokenBuffer into) {
+        buffer = into;
+        int size = into.size();
+        while (!isAtEnd()) {
+            release();
+            scanToken();
+            if (into.size() > size) return true;
+        }
+
+        into.add(TokenType.EOF, current, 0, line);
+        return false;
+    }
+
     private void scanToken() {
         char c = advance();
         switch (c) {
@@ -81,8 +147,11 @@ public class Scanner {
             /* Semi-Meaningless Characters. */
             case '/':
                 if (match('/')) {
-                    /* A comment goes until the enf of the line. */
-                    while (peek() != '\n' && !isAtEnd()) advance();
+                    /* A comment goes until the enf of the line. It has no lexeme to keep buffered. */
+                    while (peek() != '\n' && !isAtEnd()) {
+                        advance();
+                        release();
+                    }
                 } else if (match('*')) {
                     multicomment();
                 }
@@ -110,7 +179,7 @@ public class Scanner {
                     identifier();
                 } 
                 else {
-                    Lox.error(line, "Unexpected character.");
+                    diagnostics.error(line, "", "Unexpected character.");
                 }
                 break;
         }
@@ -120,11 +189,8 @@ public class Scanner {
     private void identifier() {
         while (isAlphaNumeric(peek())) advance();
 
-        /* Check if our "identifier" is actually reserved or not. */
-        String text = source.substring(start, current);
-        TokenType type = keywords.get(text);
-        if (type == null) type = TokenType.IDENTIFIER;
-        addToken(type);
+        /* Check if our "identifier" is actually reserved or not, without copying it out. */
+        addToken(Keywords.lookup(source, start, current - start));
     }
 
     /* Method for dealing with number literals. */
@@ -139,8 +205,7 @@ public class Scanner {
             while (isDigit(peek())) advance();
         }
 
-        System.out.println("Calling addToken.");
-        addToken(TokenType.NUMBER, Double.parseDouble(source.substring(start, current)));
+        addToken(TokenType.NUMBER);
     }
 
     /* Method for dealing with string literals. */
@@ -151,16 +216,13 @@ public class Scanner {
         }
 
         if (isAtEnd()) {
-            Lox.error(line, "Unterminated string.");
+            diagnostics.error(line, "", "Unterminated string.");
             return;
         }
 
         /* The closing ". */
         advance();
-
-        /* Trim the surrounding quotes. */
-        String value = source.substring(start + 1, current - 1);
-        addToken(TokenType.STRING, value);
+        addToken(TokenType.STRING);
     }
 
     /* Method for dealing with multiline comments. */
@@ -174,10 +236,12 @@ public class Scanner {
             }
             if (peek() == '\n') line++;
             advance();
+            /* Comments produce no lexeme, so don't keep them buffered, even on one long line. */
+            release();
         }
 
         if (isAtEnd()) {
-            Lox.error(line, "Unterminated C-Style comment.");
+            diagnostics.error(line, "", "Unterminated C-Style comment.");
             return;
         }
 
@@ -203,7 +267,7 @@ public class Scanner {
 
     /* Lookahead +1. */
     private char peekNext() {
-        if (current + 1  >= source.length()) return '\0';
+        if (source.isAtEnd(current + 1)) return '\0';
         return source.charAt(current + 1);
     }
 
@@ -225,7 +289,13 @@ public class Scanner {
 
     /* Helper. */
     private boolean isAtEnd() {
-        return current >= source.length();
+        return source.isAtEnd(current);
+    }
+
+    /* Let a streaming source drop everything before current, then start a new lexeme there. */
+    private void release() {
+        current -= source.release(current);
+        start = current;
     }
 
     /* For input - advance to next character for reading... */
@@ -233,15 +303,33 @@ public class Scanner {
         return source.charAt(current++);
     }
 
-    /* addToken overload 1 - for non-literals. */
+    /* Literals are rebuilt from the lexeme, so a TokenBuffer never has to store them. */
     private void addToken(TokenType type) {
-        addToken(type, null);
+        if (tracing) diagnostics.trace(type + " " + source.substring(start, current));
+        if (LexemePool.pooled(type)) {
+            lexemes.scanned();
+            /* A trace shows the same lexeme stat as a streaming scan, not just what got read. */
+            if (tracing && buffer != null) lexemes.intern(source, start, current);
+        }
+        if (buffer != null) {
+            buffer.add(type, start, current - start, line);
+            return;
+        }
+
+        String lexeme = LexemePool.pooled(type)
+            ? lexemes.intern(source, start, current)
+            : source.substring(start, current);
+        if (type == TokenType.NUMBER) {
+            tokens.add(new Token(lexeme, NumberParser.parse(source, start, current), line));
+            return;
+        }
+
+        /* Trim the surrounding quotes. */
+        Object literal = type == TokenType.STRING ? lexeme.substring(1, lexeme.length() - 1) : null;
+        tokens.add(new Token(type, lexeme, literal, line));
     }
 
-    /* addToken overload 2 - for literals. */
-    private void addToken(TokenType type, Object literal) {
-        String text = source.substring(start, current);
-        System.out.println(literal);
-        tokens.add(new Token(type, text, literal, line));
+    LexemePool lexemes() {
+        return lexemes;
     }
 }
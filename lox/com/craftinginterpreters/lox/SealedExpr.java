@@ -0,0 +1,80 @@
+package com.craftinginterpreters.lox;
+
+/* Generated by GenerateAst --sealed from the same list as Expr. */
+sealed interface SealedExpr {
+    int BINARY = 0;
+    int GROUPING = 1;
+    int LITERAL = 2;
+    int UNARY = 3;
+
+    int kind();
+
+    interface Cases<R> {
+        R binary(Binary expr);
+        R grouping(Grouping expr);
+        R literal(Literal expr);
+        R unary(Unary expr);
+    }
+
+    record Binary(SealedExpr left, Token operator, SealedExpr right) implements SealedExpr {
+        @Override
+        public int kind() {
+            return BINARY;
+        }
+    }
+
+    record Grouping(SealedExpr expression) implements SealedExpr {
+        @Override
+        public int kind() {
+            return GROUPING;
+        }
+    }
+
+    record Literal(Object value) implements SealedExpr {
+        @Override
+        public int kind() {
+            return LITERAL;
+        }
+    }
+
+    record Unary(Token operator, SealedExpr right) implements SealedExpr {
+        @Override
+        public int kind() {
+            return UNARY;
+        }
+    }
+
+    static <R> R dispatch(SealedExpr expr, Cases<R> cases) {
+        switch (expr.kind()) {
+            case BINARY: return cases.binary((Binary) expr);
+            case GROUPING: return cases.grouping((Grouping) expr);
+            case LITERAL: return cases.literal((Literal) expr);
+            case UNARY: return cases.unary((Unary) expr);
+            default: throw new IllegalStateException("Unknown kind " + expr.kind() + ".");
+        }
+    }
+
+    static SealedExpr of(Expr expr) {
+        return ExprWalker.fold(expr, new ExprWalker.Fold<SealedExpr>() {
+            @Override
+            public SealedExpr binary(Expr.Binary expr, SealedExpr left, SealedExpr right) {
+                return new Binary(left, expr.operator, right);
+            }
+
+            @Override
+            public SealedExpr grouping(Expr.Grouping expr, SealedExpr expression) {
+                return new Grouping(expression);
+            }
+
+            @Override
+            public SealedExpr literal(Expr.Literal expr) {
+                return new Literal(expr.value);
+            }
+
+            @Override
+            public SealedExpr unary(Expr.Unary expr, SealedExpr right) {
+                return new Unary(expr.operator, right);
+            }
+        });
+    }
+}
@@ -0,0 +1,69 @@
+package com.craftinginterpreters.lox;
+
+/*
+ * An expression that gets evaluated over and over. The first `threshold` times it's interpreted;
+ * after that it's compiled to a hidden class and runs as JVM bytecode. One that can't be
+ * compiled, or whose compiled code fails the first time it runs, just stays interpreted.
+ * Not safe to share between threads, like the Interpreter.
+ */
+final class TieredExpr {
+    static final int DEFAULT_THRESHOLD = 1000;
+
+    private final Expr expr;
+    private final Interpreter interpreter;
+    private final int threshold;
+    private int invocations = 0;
+    private JitCompiler.Compiled compiled;
+    private boolean uncompilable = false;
+
+    TieredExpr(Expr expr, Interpreter interpreter) {
+        this(expr, interpreter, DEFAULT_THRESHOLD);
+    }
+
+    TieredExpr(Expr expr, Interpreter interpreter, int threshold) {
+        this.expr = expr;
+        this.interpreter = interpreter;
+        this.threshold = threshold;
+    }
+
+    Object evaluate() {
+        if (compiled != null) return compiled.evaluate();
+        if (++invocations > threshold && !uncompilable) {
+            JitCompiler.Compiled candidate = compile();
+            if (candidate != null) {
+                try {
+                    Object value = candidate.evaluate();
+                    compiled = candidate;
+                    return value;
+                } catch (RuntimeError error) {
+                    /* The script's own error. The Interpreter would have thrown the same one. */
+                    compiled = candidate;
+                    throw error;
+                } catch (RuntimeException | StackOverflowError error) {
+                    /* Expressions are pure, so running it again interpreted is safe. */
+                    uncompilable = true;
+                }
+            }
+        }
+        return interpreter.evaluate(expr);
+    }
+
+    private JitCompiler.Compiled compile() {
+        try {
+            return JitCompiler.compile(expr, interpreter);
+        } catch (RuntimeException | StackOverflowError | LinkageError error) {
+            /* Too large, or a class the JVM won't load. */
+            uncompilable = true;
+            return null;
+        }
+    }
+
+    boolean isCompiled() {
+        return compiled != null;
+    }
+
+    /* How many times it was interpreted before it got compiled, or so far. */
+    int invocations() {
+        return invocations;
+    }
+}
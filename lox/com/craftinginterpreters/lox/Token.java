@@ -3,17 +3,32 @@ package com.craftinginterpreters.lox;
 class Token {
     final TokenType type;
     final String lexeme;
-    final Object literal;
+    final double number;
     final int line;
+    private Object literal;
     
     Token(TokenType type, String lexeme, Object literal, int line) {
         this.type = type;
         this.lexeme = lexeme;
         this.literal = literal;
+        this.number = literal instanceof Double ? (Double) literal : 0;
         this.line = line;
     }
 
+    /* A NUMBER keeps its value unboxed until somebody asks for the literal. */
+    Token(String lexeme, double number, int line) {
+        this.type = TokenType.NUMBER;
+        this.lexeme = lexeme;
+        this.number = number;
+        this.line = line;
+    }
+
+    Object literal() {
+        if (literal == null && type == TokenType.NUMBER) literal = number;
+        return literal;
+    }
+
     public String toString() {
-        return type + " " + lexeme + " " + literal;
+        return type + " " + lexeme + " " + literal();
     }
 }
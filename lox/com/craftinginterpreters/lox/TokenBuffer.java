@@ -0,0 +1,179 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Arrays;
+
+/* Tokens stored column-wise in primitive arrays. Nothing is allocated per token. */
+final class TokenBuffer {
+    private static final TokenType[] TYPES = TokenType.values();
+
+    private final String source;
+    private final CharSource chars;
+    private final LexemePool lexemes;
+    private int[] types;
+    private int[] starts;
+    private int[] lengths;
+    private int[] lines;
+    private int size = 0;
+
+    TokenBuffer(String source, LexemePool lexemes) {
+        this(source, lexemes, 64);
+    }
+
+    TokenBuffer(String source, LexemePool lexemes, int capacity) {
+        this.source = source;
+        this.chars = CharSource.of(source);
+        this.lexemes = lexemes;
+        this.types = new int[capacity];
+        this.starts = new int[capacity];
+        this.lengths = new int[capacity];
+        this.lines = new int[capacity];
+    }
+
+    void add(TokenType type, int start, int length, int line) {
+        if (size == types.length) grow();
+        types[size] = type.ordinal();
+        starts[size] = start;
+        lengths[size] = length;
+        lines[size] = line;
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    String source() {
+        return source;
+    }
+
+    LexemePool lexemes() {
+        return lexemes;
+    }
+
+    /* Append another buffer over the same source, dropping its EOF if it has one. */
+    void append(TokenBuffer other) {
+        int count = other.size;
+        if (count > 0 && other.types[count - 1] == TokenType.EOF.ordinal()) count--;
+        append(other, 0, count, 0, 0);
+    }
+
+    /* Append a run of another buffer's tokens, moved by `shift` characters and `lineShift` lines. */
+    void append(TokenBuffer other, int from, int count, int shift, int lineShift) {
+        while (size + count > types.length) grow();
+
+        System.arraycopy(other.types, from, types, size, count);
+        System.arraycopy(other.starts, from, starts, size, count);
+        System.arraycopy(other.lengths, from, lengths, size, count);
+        System.arraycopy(other.lines, from, lines, size, count);
+        if (shift != 0 || lineShift != 0) {
+            for (int i = size; i < size + count; i++) {
+                starts[i] += shift;
+                lines[i] += lineShift;
+            }
+        }
+        size += count;
+    }
+
+    /* Forget every token from `size` on. */
+    void truncate(int size) {
+        this.size = size;
+    }
+
+    TokenType type(int index) {
+        return TYPES[types[index]];
+    }
+
+    int start(int index) {
+        return starts[index];
+    }
+
+    int length(int index) {
+        return lengths[index];
+    }
+
+    int line(int index) {
+        return lines[index];
+    }
+
+    /* The lazy parts. Only built when somebody asks. */
+    String lexeme(int index) {
+        int start = starts[index];
+        if (LexemePool.pooled(type(index))) return lexemes.intern(chars, start, start + lengths[index]);
+        return source.substring(start, start + lengths[index]);
+    }
+
+    Object literal(int index) {
+        switch (type(index)) {
+            /* Trim the surrounding quotes. */
+            case STRING: return source.substring(starts[index] + 1, starts[index] + lengths[index] - 1);
+            case NUMBER: return number(index);
+            default: return null;
+        }
+    }
+
+    double number(int index) {
+        return NumberParser.parse(chars, starts[index], starts[index] + lengths[index]);
+    }
+
+    Token token(int index) {
+        if (type(index) == TokenType.NUMBER) return new Token(lexeme(index), number(index), lines[index]);
+        return new Token(type(index), lexeme(index), literal(index), lines[index]);
+    }
+
+    TokenCursor cursor() {
+        return new Cursor();
+    }
+
+    private void grow() {
+        int capacity = Math.max(types.length * 2, 16);
+        types = Arrays.copyOf(types, capacity);
+        starts = Arrays.copyOf(starts, capacity);
+        lengths = Arrays.copyOf(lengths, capacity);
+        lines = Arrays.copyOf(lines, capacity);
+    }
+
+    /* The Parser walks the buffer by index. A Token only appears when it is asked for. */
+    private final class Cursor implements TokenCursor {
+        private int current = 0;
+
+        @Override
+        public TokenType peekType() {
+            return type(current);
+        }
+
+        @Override
+        public TokenType previousType() {
+            return type(current - 1);
+        }
+
+        @Override
+        public Token peek() {
+            return token(current);
+        }
+
+        @Override
+        public Token previous() {
+            return token(current - 1);
+        }
+
+        @Override
+        public Object previousLiteral() {
+            return literal(current - 1);
+        }
+
+        @Override
+        public int previousLine() {
+            return line(current - 1);
+        }
+
+        @Override
+        public double previousNumber() {
+            return number(current - 1);
+        }
+
+        @Override
+        public void advance() {
+            current++;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.craftinginterpreters.lox;
+
+import java.util.List;
+
+/* How the Parser walks tokens. Types can be checked without building a Token. */
+interface TokenCursor {
+    TokenType peekType();
+
+    TokenType previousType();
+
+    Token peek();
+
+    Token previous();
+
+    Object previousLiteral();
+
+    /* For callers that only want the parts, not a Token. */
+    default int previousLine() {
+        return previous().line;
+    }
+
+    default double previousNumber() {
+        return previous().number;
+    }
+
+    /* Callers never advance past EOF. */
+    void advance();
+
+    static TokenCursor of(List<Token> tokens) {
+        return new ListCursor(tokens);
+    }
+
+    /* The original List<Token> pipeline. */
+    final class ListCursor implements TokenCursor {
+        private final List<Token> tokens;
+        private int current = 0;
+
+        ListCursor(List<Token> tokens) {
+            this.tokens = tokens;
+        }
+
+        @Override
+        public TokenType peekType() {
+            return tokens.get(current).type;
+        }
+
+        @Override
+        public TokenType previousType() {
+            return tokens.get(current - 1).type;
+        }
+
+        @Override
+        public Token peek() {
+            return tokens.get(current);
+        }
+
+        @Override
+        public Token previous() {
+            return tokens.get(current - 1);
+        }
+
+        @Override
+        public Object previousLiteral() {
+            return tokens.get(current - 1).literal();
+        }
+
+        @Override
+        public void advance() {
+            current++;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.craftinginterpreters.lox;
+
+/*
+ * Pulls tokens from a Scanner only when the Parser asks for them. Just the last few live in a
+ * ring buffer, so memory depends on lookahead, not on the size of the source.
+ */
+final class TokenSource implements TokenCursor {
+    /* previous() and peek() need two slots. A power of two keeps the index a mask. */
+    private static final int SIZE = 4;
+
+    private final Scanner scanner;
+    private final Token[] ring = new Token[SIZE];
+    private int current = 0;
+    private int scanned = 0;
+
+    TokenSource(Scanner scanner) {
+        this.scanner = scanner;
+    }
+
+    @Override
+    public TokenType peekType() {
+        return peek().type;
+    }
+
+    @Override
+    public TokenType previousType() {
+        return previous().type;
+    }
+
+    @Override
+    public Token peek() {
+        if (scanned == current) {
+            ring[scanned & (SIZE - 1)] = scanner.nextToken();
+            scanned++;
+        }
+        return ring[current & (SIZE - 1)];
+    }
+
+    @Override
+    public Token previous() {
+        return ring[(current - 1) & (SIZE - 1)];
+    }
+
+    @Override
+    public Object previousLiteral() {
+        return previous().literal();
+    }
+
+    @Override
+    public void advance() {
+        peek();
+        current++;
+    }
+
+    /* Scan whatever the Parser didn't need, so errors in it still get reported. */
+    void drain() {
+        while (peekType() != TokenType.EOF) advance();
+    }
+}
@@ -0,0 +1,191 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Arrays;
+
+/*
+ * Runs a Chunk on a tagged stack: a tag per slot, the number in a double[] and only strings in
+ * an Object[]. Numbers and booleans never get boxed until the result leaves the VM. A VM can
+ * run many chunks, one at a time.
+ */
+final class VM {
+    private static final byte NIL = 0;
+    private static final byte FALSE = 1;
+    private static final byte TRUE = 2;
+    private static final byte NUMBER = 3;
+    private static final byte STRING = 4;
+
+    private byte[] tags = new byte[64];
+    private double[] numbers = new double[64];
+    private Object[] strings = new Object[64];
+
+    /* Same values, same runtime errors as the Interpreter. */
+    Object run(Chunk chunk) {
+        try {
+            return execute(chunk);
+        } catch (RuntimeError error) {
+            /* Don't keep the strings of a failed run alive. */
+            Arrays.fill(strings, null);
+            throw error;
+        }
+    }
+
+    private Object execute(Chunk chunk) {
+        if (chunk.maxStack > tags.length) {
+            tags = new byte[chunk.maxStack];
+            numbers = new double[chunk.maxStack];
+            strings = new Object[chunk.maxStack];
+        }
+        byte[] tags = this.tags;
+        double[] numbers = this.numbers;
+        Object[] strings = this.strings;
+        byte[] code = chunk.code();
+        double[] constants = chunk.numbers();
+        String[] texts = chunk.strings();
+
+        int top = 0;
+        int ip = 0;
+        while (true) {
+            int start = ip;
+            switch (code[ip++]) {
+                case Chunk.OP_NUMBER:
+                    tags[top] = NUMBER;
+                    numbers[top++] = constants[readShort(code, ip)];
+                    ip += 2;
+                    break;
+                case Chunk.OP_NUMBER_LONG:
+                    tags[top] = NUMBER;
+                    numbers[top++] = constants[readInt(code, ip)];
+                    ip += 4;
+                    break;
+                case Chunk.OP_STRING:
+                    tags[top] = STRING;
+                    strings[top++] = texts[readShort(code, ip)];
+                    ip += 2;
+                    break;
+                case Chunk.OP_STRING_LONG:
+                    tags[top] = STRING;
+                    strings[top++] = texts[readInt(code, ip)];
+                    ip += 4;
+                    break;
+                case Chunk.OP_NIL: tags[top++] = NIL; break;
+                case Chunk.OP_TRUE: tags[top++] = TRUE; break;
+                case Chunk.OP_FALSE: tags[top++] = FALSE; break;
+                case Chunk.OP_POP:
+                    strings[--top] = null;
+                    break;
+                case Chunk.OP_EQUAL:
+                case Chunk.OP_NOT_EQUAL: {
+                    top--;
+                    boolean equal = equal(tags, numbers, strings, top - 1, top);
+                    if (code[start] == Chunk.OP_NOT_EQUAL) equal = !equal;
+                    strings[top] = null;
+                    strings[top - 1] = null;
+                    tags[top - 1] = equal ? TRUE : FALSE;
+                    break;
+                }
+                case Chunk.OP_ADD:
+                    top--;
+                    if (tags[top - 1] == NUMBER && tags[top] == NUMBER) {
+                        numbers[top - 1] += numbers[top];
+                    } else if (tags[top - 1] == STRING && tags[top] == STRING) {
+                        strings[top - 1] = (String) strings[top - 1] + (String) strings[top];
+                        strings[top] = null;
+                    } else {
+                        throw new RuntimeError(chunk.line(start), "Operands must be two numbers or two strings.");
+                    }
+                    break;
+                case Chunk.OP_SUBTRACT:
+                    top--;
+                    checkNumbers(chunk, start, tags, top);
+                    numbers[top - 1] -= numbers[top];
+                    break;
+                case Chunk.OP_MULTIPLY:
+                    top--;
+                    checkNumbers(chunk, start, tags, top);
+                    numbers[top - 1] *= numbers[top];
+                    break;
+                case Chunk.OP_DIVIDE:
+                    top--;
+                    checkNumbers(chunk, start, tags, top);
+                    numbers[top - 1] /= numbers[top];
+                    break;
+                case Chunk.OP_GREATER:
+                    top--;
+                    checkNumbers(chunk, start, tags, top);
+                    tags[top - 1] = numbers[top - 1] > numbers[top] ? TRUE : FALSE;
+                    break;
+                case Chunk.OP_GREATER_EQUAL:
+                    top--;
+                    checkNumbers(chunk, start, tags, top);
+                    tags[top - 1] = numbers[top - 1] >= numbers[top] ? TRUE : FALSE;
+                    break;
+                case Chunk.OP_LESS:
+                    top--;
+                    checkNumbers(chunk, start, tags, top);
+                    tags[top - 1] = numbers[top - 1] < numbers[top] ? TRUE : FALSE;
+                    break;
+                case Chunk.OP_LESS_EQUAL:
+                    top--;
+                    checkNumbers(chunk, start, tags, top);
+                    tags[top - 1] = numbers[top - 1] <= numbers[top] ? TRUE : FALSE;
+                    break;
+                case Chunk.OP_NOT:
+                    tags[top - 1] = tags[top - 1] <= FALSE ? TRUE : FALSE;
+                    strings[top - 1] = null;
+                    break;
+                case Chunk.OP_NEGATE:
+                    if (tags[top - 1] != NUMBER) throw new RuntimeError(chunk.line(start), "Operand must be a number.");
+                    numbers[top - 1] = -numbers[top - 1];
+                    break;
+                case Chunk.OP_JUMP:
+                    ip += 4 + readInt(code, ip);
+                    break;
+                case Chunk.OP_JUMP_IF_FALSE:
+                    /* nil and false are the falsey tags. */
+                    ip += tags[top - 1] <= FALSE ? 4 + readInt(code, ip) : 4;
+                    break;
+                case Chunk.OP_RETURN: {
+                    Object result = value(tags, numbers, strings, top - 1);
+                    strings[top - 1] = null;
+                    return result;
+                }
+                default:
+                    throw new IllegalStateException("Unknown opcode " + code[start] + " at " + start + ".");
+            }
+        }
+    }
+
+    private static int readShort(byte[] code, int ip) {
+        return (code[ip] & 0xFF) << 8 | (code[ip + 1] & 0xFF);
+    }
+
+    private static int readInt(byte[] code, int ip) {
+        return (code[ip] & 0xFF) << 24 | (code[ip + 1] & 0xFF) << 16
+            | (code[ip + 2] & 0xFF) << 8 | (code[ip + 3] & 0xFF);
+    }
+
+    private static void checkNumbers(Chunk chunk, int offset, byte[] tags, int top) {
+        if (tags[top - 1] == NUMBER && tags[top] == NUMBER) return;
+        throw new RuntimeError(chunk.line(offset), "Operands must be numbers.");
+    }
+
+    /* Interpreter.isEqual() on tagged slots. Numbers compare by bits, like Double.equals(). */
+    private static boolean equal(byte[] tags, double[] numbers, Object[] strings, int a, int b) {
+        if (tags[a] != tags[b]) return false;
+        switch (tags[a]) {
+            case NUMBER: return Double.doubleToLongBits(numbers[a]) == Double.doubleToLongBits(numbers[b]);
+            case STRING: return strings[a].equals(strings[b]);
+            default: return true;
+        }
+    }
+
+    private static Object value(byte[] tags, double[] numbers, Object[] strings, int slot) {
+        switch (tags[slot]) {
+            case NUMBER: return numbers[slot];
+            case STRING: return strings[slot];
+            case TRUE: return true;
+            case FALSE: return false;
+            default: return null;
+        }
+    }
+}
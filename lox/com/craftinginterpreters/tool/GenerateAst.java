@@ -2,23 +2,27 @@ package com.craftinginterpreters.tool;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
 public class GenerateAst {
     public static void main(String[] args) throws IOException {
-        if (args.length != 1) {
-            System.err.println("Usage: generate_ast <output_dir>");
+        if (args.length < 1 || args.length > 2 || (args.length == 2 && !args[1].equals("--sealed"))) {
+            System.err.println("Usage: generate_ast <output_dir> [--sealed]");
             System.exit(64);
         }
         String outputDir = args[0];
-        
-        defineAst(outputDir, "Expr", Arrays.asList(
+        List<String> types = Arrays.asList(
             "Binary     : Expr left, Token operator, Expr right",
             "Grouping   : Expr expression",
             "Literal    : Object value",
             "Unary      : Token operator, Expr right"
-        ));
+        );
+
+        defineAst(outputDir, "Expr", types);
+        /* The Visitor layout is always there. The sealed one is written next to it. */
+        if (args.length == 2) defineSealedAst(outputDir, "Expr", types);
     }
 
     private static void defineAst(String outputDir, String baseName, List<String> types) throws IOException {
@@ -90,4 +94,106 @@ public class GenerateAst {
 
         writer.println("  }");
     }
+
+    /*
+     * The same nodes as records under a sealed interface. Each record has an int kind() tag,
+     * so a pass can be one switch that HotSpot turns into a jump table instead of accept() calls.
+     */
+    private static void defineSealedAst(String outputDir, String baseName, List<String> types) throws IOException {
+        String sealedName = "Sealed" + baseName;
+        String path = outputDir + "/" + sealedName + ".java";
+        PrintWriter writer = new PrintWriter(path, "UTF-8");
+
+        writer.println("package com.craftinginterpreters.lox;");
+        writer.println();
+        writer.println("/* Generated by GenerateAst --sealed from the same list as " + baseName + ". */");
+        writer.println("sealed interface " + sealedName + " {");
+
+        /* The kind tags, in declaration order. */
+        for (int i = 0; i < types.size(); i++) {
+            writer.println("    int " + typeName(types.get(i)).toUpperCase() + " = " + i + ";");
+        }
+        writer.println();
+        writer.println("    int kind();");
+
+        /* One method per node type, for dispatch(). */
+        writer.println();
+        writer.println("    interface Cases<R> {");
+        for (String type : types) {
+            String typeName = typeName(type);
+            writer.println("        R " + lowerFirst(typeName) + "(" + typeName + " " + baseName.toLowerCase() + ");");
+        }
+        writer.println("    }");
+
+        for (String type : types) {
+            String typeName = typeName(type);
+            String fields = type.split(":")[1].trim().replaceAll("\\b" + baseName + "\\b", sealedName);
+            writer.println();
+            writer.println("    record " + typeName + "(" + fields + ") implements " + sealedName + " {");
+            writer.println("        @Override");
+            writer.println("        public int kind() {");
+            writer.println("            return " + typeName.toUpperCase() + ";");
+            writer.println("        }");
+            writer.println("    }");
+        }
+
+        /* Every kind has a case, so the default only catches a tag that was never generated. */
+        writer.println();
+        writer.println("    static <R> R dispatch(" + sealedName + " " + baseName.toLowerCase() + ", Cases<R> cases) {");
+        writer.println("        switch (" + baseName.toLowerCase() + ".kind()) {");
+        for (String type : types) {
+            String typeName = typeName(type);
+            writer.println("            case " + typeName.toUpperCase() + ": return cases." + lowerFirst(typeName)
+                + "((" + typeName + ") " + baseName.toLowerCase() + ");");
+        }
+        writer.println("            default: throw new IllegalStateException(\"Unknown kind \" + "
+            + baseName.toLowerCase() + ".kind() + \".\");");
+        writer.println("        }");
+        writer.println("    }");
+
+        /*
+         * Converts from the Visitor layout, field by field. Bottom up through ExprWalker.fold, so
+         * deep trees don't overflow the stack. Fold has a method per type, children in field order.
+         */
+        String lower = baseName.toLowerCase();
+        writer.println();
+        writer.println("    static " + sealedName + " of(" + baseName + " " + lower + ") {");
+        writer.println("        return " + baseName + "Walker.fold(" + lower + ", new " + baseName + "Walker.Fold<"
+            + sealedName + ">() {");
+        for (int i = 0; i < types.size(); i++) {
+            String typeName = typeName(types.get(i));
+            List<String> parameters = new ArrayList<>();
+            parameters.add(baseName + "." + typeName + " " + lower);
+            List<String> arguments = new ArrayList<>();
+            for (String field : types.get(i).split(":")[1].trim().split(", ")) {
+                String fieldType = field.split(" ")[0];
+                String name = field.split(" ")[1];
+                if (fieldType.equals(baseName)) {
+                    parameters.add(sealedName + " " + name);
+                    arguments.add(name);
+                } else {
+                    arguments.add(lower + "." + name);
+                }
+            }
+            if (i > 0) writer.println();
+            writer.println("            @Override");
+            writer.println("            public " + sealedName + " " + lowerFirst(typeName) + "("
+                + String.join(", ", parameters) + ") {");
+            writer.println("                return new " + typeName + "(" + String.join(", ", arguments) + ");");
+            writer.println("            }");
+        }
+        writer.println("        });");
+        writer.println("    }");
+
+        writer.println("}");
+        writer.close();
+    }
+
+    private static String typeName(String type) {
+        return type.split(":")[0].trim();
+    }
+
+    private static String lowerFirst(String name) {
+        return Character.toLowerCase(name.charAt(0)) + name.substring(1);
+    }
 }
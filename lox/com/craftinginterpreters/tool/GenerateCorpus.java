@@ -0,0 +1,215 @@
+package com.craftinginterpreters.tool;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/* Generates reproducible Lox expression corpora for the benchmarks. Same arguments, same bytes. */
+public class GenerateCorpus {
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3 || args.length > 5) usage();
+        String outputFile = args[0];
+        int expressions = Integer.parseInt(args[1]);
+        int depth = Integer.parseInt(args[2]);
+        /* At least one expression, or there's nothing to join. */
+        if (expressions < 1 || depth < 0) usage();
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : 42;
+        Mix mix = args.length > 4 ? Mix.named(args[4]) : Mix.MIXED;
+
+        PrintWriter writer = new PrintWriter(outputFile, "UTF-8");
+        writer.print(generate(seed, expressions, depth, mix));
+        writer.close();
+    }
+
+    private static void usage() {
+        System.err.println("Usage: generate_corpus <output_file> <expressions> <depth> [seed] [mix]");
+        System.err.println("       expressions >= 1, depth >= 0");
+        System.exit(64);
+    }
+
+    /* How often each kind of node shows up. Only weights relative to each other matter. */
+    public static final class Mix {
+        public static final Mix ARITHMETIC = new Mix(8, 0, 0, 0, 8, 0, 0, 2, 2, 0, 0, 0);
+        public static final Mix MIXED = new Mix(6, 2, 1, 1, 6, 3, 2, 2, 2, 1, 0, 0);
+        public static final Mix STRINGS = new Mix(1, 8, 0, 0, 6, 0, 2, 0, 1, 1, 0, 0);
+        /* Identifiers and comments only make sense to the Scanner, so this one won't parse. */
+        public static final Mix LEXICAL = new Mix(4, 2, 1, 1, 4, 2, 2, 2, 2, 1, 4, 2);
+
+        final int numbers;
+        final int strings;
+        final int booleans;
+        final int nils;
+        final int arithmetic;
+        final int comparisons;
+        final int equality;
+        final int unary;
+        final int groupings;
+        final int ternaries;
+        final int identifiers;
+        final int comments;
+
+        public Mix(int numbers, int strings, int booleans, int nils,
+                   int arithmetic, int comparisons, int equality, int unary,
+                   int groupings, int ternaries, int identifiers, int comments) {
+            this.numbers = numbers;
+            this.strings = strings;
+            this.booleans = booleans;
+            this.nils = nils;
+            this.arithmetic = arithmetic;
+            this.comparisons = comparisons;
+            this.equality = equality;
+            this.unary = unary;
+            this.groupings = groupings;
+            this.ternaries = ternaries;
+            this.identifiers = identifiers;
+            this.comments = comments;
+        }
+
+        public static Mix named(String name) {
+            switch (name) {
+                case "arithmetic": return ARITHMETIC;
+                case "mixed": return MIXED;
+                case "strings": return STRINGS;
+                case "lexical": return LEXICAL;
+                default: throw new IllegalArgumentException("Unknown mix '" + name + "'.");
+            }
+        }
+    }
+
+    /*
+     * One expression made of `expressions` top-level items of nesting depth up to `depth`.
+     * The items are joined with commas in balanced groups, so the tree only gets log2 deeper.
+     */
+    public static String generate(long seed, int expressions, int depth, Mix mix) {
+        if (expressions < 1 || depth < 0) {
+            throw new IllegalArgumentException("Need at least one expression and a depth of at least 0.");
+        }
+        Generator generator = new Generator(new Random(seed), mix);
+        List<String> items = new ArrayList<>();
+        for (int i = 0; i < expressions; i++) {
+            StringBuilder item = new StringBuilder();
+            generator.expression(item, depth);
+            items.add(item.toString());
+        }
+
+        StringBuilder builder = new StringBuilder();
+        join(builder, items, 0, items.size());
+        builder.append('\n');
+        return builder.toString();
+    }
+
+    private static void join(StringBuilder builder, List<String> items, int from, int to) {
+        if (to - from == 1) {
+            builder.append(items.get(from));
+            return;
+        }
+
+        int middle = (from + to) >>> 1;
+        builder.append('(');
+        join(builder, items, from, middle);
+        builder.append(",\n");
+        join(builder, items, middle, to);
+        builder.append(')');
+    }
+
+    private static class Generator {
+        private static final String[] ARITHMETIC = {"+", "-", "*", "/"};
+        private static final String[] COMPARISONS = {">", ">=", "<", "<="};
+        private static final String[] EQUALITY = {"==", "!="};
+        private static final String[] NAMES = {"x", "count", "total", "index", "value", "andy", "format"};
+
+        private final Random random;
+        private final Mix mix;
+
+        Generator(Random random, Mix mix) {
+            this.random = random;
+            this.mix = mix;
+        }
+
+        /* Everything is emitted at equality precedence or tighter, so any of it can follow a comma. */
+        void expression(StringBuilder out, int depth) {
+            if (depth == 0) {
+                primary(out);
+                return;
+            }
+
+            int[] weights = {
+                mix.numbers + mix.strings + mix.booleans + mix.nils + mix.identifiers,
+                mix.arithmetic, mix.comparisons, mix.equality, mix.unary, mix.groupings, mix.ternaries
+            };
+            switch (pick(weights)) {
+                case 0: primary(out); break;
+                case 1: binary(out, ARITHMETIC, depth); break;
+                case 2: binary(out, COMPARISONS, depth); break;
+                case 3: binary(out, EQUALITY, depth); break;
+                case 4:
+                    out.append(random.nextBoolean() ? "-" : "!");
+                    operand(out, depth - 1);
+                    break;
+                case 5:
+                    out.append('(');
+                    expression(out, depth - 1);
+                    out.append(')');
+                    break;
+                case 6:
+                    /* Always grouped, since a bare ?: can't be the right side of a comma. */
+                    out.append('(');
+                    expression(out, depth - 1);
+                    out.append(" ? ");
+                    expression(out, depth - 1);
+                    out.append(" : ");
+                    expression(out, depth - 1);
+                    out.append(')');
+                    break;
+            }
+
+            if (mix.comments > 0 && random.nextInt(16) == 0) {
+                out.append(random.nextBoolean() ? " // note\n" : " /* note */ ");
+            }
+        }
+
+        private void binary(StringBuilder out, String[] operators, int depth) {
+            expression(out, depth - 1);
+            out.append(' ').append(operators[random.nextInt(operators.length)]).append(' ');
+            expression(out, depth - 1);
+        }
+
+        /* A unary operand has to be a primary, another unary or a group. */
+        private void operand(StringBuilder out, int depth) {
+            if (depth == 0 || random.nextBoolean()) {
+                primary(out);
+            } else {
+                out.append('(');
+                expression(out, depth);
+                out.append(')');
+            }
+        }
+
+        private void primary(StringBuilder out) {
+            int[] weights = {mix.numbers, mix.strings, mix.booleans, mix.nils, mix.identifiers};
+            switch (pick(weights)) {
+                case 0:
+                    out.append(random.nextInt(1000));
+                    if (random.nextInt(4) == 0) out.append('.').append(random.nextInt(100));
+                    break;
+                case 1: out.append('"').append(NAMES[random.nextInt(NAMES.length)]).append('"'); break;
+                case 2: out.append(random.nextBoolean() ? "true" : "false"); break;
+                case 3: out.append("nil"); break;
+                case 4: out.append(NAMES[random.nextInt(NAMES.length)]); break;
+            }
+        }
+
+        private int pick(int[] weights) {
+            int total = 0;
+            for (int weight : weights) total += weight;
+            int roll = random.nextInt(Math.max(total, 1));
+            for (int i = 0; i < weights.length; i++) {
+                roll -= weights[i];
+                if (roll < 0) return i;
+            }
+            return 0;
+        }
+    }
+}